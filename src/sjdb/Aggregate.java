@@ -0,0 +1,82 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents a hash aggregation operator, which groups the
+ * tuples of its input on the grouping attributes and computes a number
+ * of aggregate functions for each group. The output consists of the
+ * grouping attributes followed by one attribute per function.
+ *
+ * With no grouping attributes, the whole input forms a single group.
+ */
+public class Aggregate extends UnaryOperator {
+	private List<Attribute> groupingAttributes;
+	private List<AggregateFunction> functions;
+
+	/**
+	 * Create a new aggregate operator.
+	 * @param input Child operator
+	 * @param groupingAttributes Attributes to group on
+	 * @param functions Aggregate functions to compute for each group
+	 */
+	public Aggregate(Operator input, List<Attribute> groupingAttributes, List<AggregateFunction> functions) {
+		super(input);
+		this.groupingAttributes = groupingAttributes;
+		this.functions = functions;
+	}
+
+	/**
+	 * Return the list of attributes grouped on by this operator
+	 * @return Grouping attributes
+	 */
+	public List<Attribute> getGroupingAttributes() {
+		return this.groupingAttributes;
+	}
+
+	/**
+	 * Return the list of aggregate functions computed by this operator
+	 * @return Aggregate functions
+	 */
+	public List<AggregateFunction> getFunctions() {
+		return this.functions;
+	}
+
+	/**
+	 * Return the list of attributes output by this operator
+	 * @return Grouping attributes followed by the function results
+	 */
+	public List<Attribute> getAttributes() {
+		List<Attribute> attributes = new ArrayList<Attribute>(this.groupingAttributes);
+		for (AggregateFunction function : this.functions) {
+			attributes.add(function.getOutputAttribute());
+		}
+		return attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#accept(sjdb.OperatorVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String ret = "AGGREGATE [";
+		for (int i = 0; i < this.groupingAttributes.size(); i++) {
+			ret += (i > 0 ? "," : "") + this.groupingAttributes.get(i).toString();
+		}
+		ret += "] [";
+		for (int i = 0; i < this.functions.size(); i++) {
+			ret += (i > 0 ? "," : "") + this.functions.get(i).toString();
+		}
+		ret += "] (" + getInput().toString() + ")";
+
+		return ret;
+	}
+}
@@ -0,0 +1,76 @@
+package sjdb;
+
+/**
+ * This class represents an aggregate function computed by an Aggregate
+ * operator over each group of tuples, such as COUNT(*) or SUM(age).
+ */
+public class AggregateFunction {
+	/**
+	 * The supported aggregate functions
+	 */
+	public enum Function {
+		COUNT, SUM, MIN, MAX, AVG
+	}
+
+	private Function function;
+	private Attribute attribute;
+	private String name;
+
+	/**
+	 * Create a new aggregate function, named after the function and its
+	 * argument (for example "SUM(age)")
+	 * @param function Aggregate function
+	 * @param attribute Aggregated attribute, or null for COUNT(*)
+	 */
+	public AggregateFunction(Function function, Attribute attribute) {
+		this(function, attribute, function + "(" + (attribute == null ? "*" : attribute.toString()) + ")");
+	}
+
+	/**
+	 * Create a new aggregate function with the given output name
+	 * @param function Aggregate function
+	 * @param attribute Aggregated attribute, or null for COUNT(*)
+	 * @param name Name of the attribute holding the result
+	 */
+	public AggregateFunction(Function function, Attribute attribute, String name) {
+		this.function = function;
+		this.attribute = attribute;
+		this.name = name;
+	}
+
+	/**
+	 * Return the aggregate function
+	 * @return Function
+	 */
+	public Function getFunction() {
+		return this.function;
+	}
+
+	/**
+	 * Return the aggregated attribute
+	 * @return Aggregated attribute, or null for COUNT(*)
+	 */
+	public Attribute getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * Return the attribute holding the result of this function
+	 * @return Output attribute
+	 */
+	public Attribute getOutputAttribute() {
+		return new Attribute(this.name);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		String ret = this.function + "(" + (this.attribute == null ? "*" : this.attribute.toString()) + ")";
+		if (!ret.equals(this.name)) {
+			ret += " AS " + this.name;
+		}
+		return ret;
+	}
+}
@@ -4,6 +4,14 @@
 package sjdb;
 
 /**
+ * An attribute is identified by its name and, within a query, by the
+ * qualifier it is referred to by (the name or alias of its relation),
+ * if the query needs one to tell it apart from an attribute of the same
+ * name in another relation. An attribute declared in the catalogue also
+ * records the name of its named relation, which is kept when it is
+ * copied into a plan, so that catalogue information about it can be
+ * found; that name is not part of its identity.
+ * 
  * @author nmg
  *
  */
@@ -11,6 +19,8 @@ public class Attribute {
 
 	private String name;
 	private int values;
+	private String qualifier;
+	private String relation;
 
 	public Attribute(String name) {
 		this.name = name;
@@ -25,9 +35,43 @@ public class Attribute {
 		this.values = values;
 	}
 	
+	/**
+	 * Create an attribute of the named relation with the given name
+	 * @param name
+	 * @param values
+	 * @param relation
+	 */
+	public Attribute(String name, int values, String relation) {
+		this.name = name;
+		this.values = values;
+		this.relation = relation;
+	}
+	
 	public Attribute(Attribute attr) {
 		this.name = attr.name;
 		this.values = attr.values;
+		this.qualifier = attr.qualifier;
+		this.relation = attr.relation;
+	}
+	
+	/**
+	 * Copy an attribute, with a new number of distinct values
+	 * @param attr
+	 * @param values
+	 */
+	public Attribute(Attribute attr, int values) {
+		this(attr);
+		this.values = values;
+	}
+	
+	/**
+	 * Copy an attribute, qualified by the name or alias of its relation
+	 * @param attr
+	 * @param qualifier
+	 */
+	public Attribute(Attribute attr, String qualifier) {
+		this(attr);
+		this.qualifier = qualifier;
 	}
 	
 	/**
@@ -44,6 +88,20 @@ public class Attribute {
 		return values;
 	}
 	
+	/**
+	 * @return the qualifier of the attribute, or null if it is referred to by name alone
+	 */
+	public String getQualifier() {
+		return qualifier;
+	}
+	
+	/**
+	 * @return the name of the named relation declaring the attribute, or null if it is not known
+	 */
+	public String getRelation() {
+		return relation;
+	}
+	
 	
 	@Override
 	public int hashCode() {
@@ -60,15 +118,16 @@ public class Attribute {
 		}
 		Attribute rhs = (Attribute) obj;
 		
-		return this.name.equals(rhs.getName());
+		return this.name.equals(rhs.getName())
+				&& (this.qualifier == null ? rhs.getQualifier() == null : this.qualifier.equals(rhs.getQualifier()));
 	}
 	
 	public String toString() {
-		return this.name;
+		return this.qualifier == null ? this.name : this.qualifier + "." + this.name;
 	}
 	
 	public String render() {
-		return name + "," + values;
+		return toString() + "," + values;
 	}
 	
 	
@@ -0,0 +1,159 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class optimises a batch of queries together. Each plan is
+ * optimised on its own, and is then added to the batch: every sub-plan
+ * that is structurally equal (see PlanKey) to one of a plan added
+ * earlier is replaced by that plan's operator, so that the plans of the
+ * batch form a DAG in which a common sub-plan, such as the same join,
+ * appears once and is computed once for every plan that consumes it.
+ *
+ * The operators of a plan are never changed: an operator whose inputs
+ * are replaced is rebuilt with the shared inputs, keeping its estimated
+ * output. A batch optimiser is not thread-safe.
+ */
+public class BatchOptimiser {
+	private Optimiser optimiser;
+	// The operator of each distinct sub-plan in the batch, and the key and plan number of each such operator
+	private Map<PlanKey, Operator> subPlans;
+	private Map<Operator, PlanKey> keys;
+	private Map<Operator, Integer> planNumbers;
+	private int planCount;
+	private List<Operator> reused;
+
+	/**
+	 * Create a new, empty batch of plans over the given catalogue
+	 * @param catalogue
+	 */
+	public BatchOptimiser(Catalogue catalogue) {
+		this.optimiser = new Optimiser(catalogue);
+		this.subPlans = new HashMap<PlanKey, Operator>();
+		this.keys = new IdentityHashMap<Operator, PlanKey>();
+		this.planNumbers = new IdentityHashMap<Operator, Integer>();
+		this.reused = new ArrayList<Operator>();
+	}
+
+	/**
+	 * Optimise each of the given canonical plans, and add it to the batch
+	 * @param plans Canonical plans
+	 * @return Optimised plans, sharing their common sub-plans
+	 */
+	public List<Operator> optimise(List<Operator> plans) {
+		List<Operator> optimisedPlans = new ArrayList<Operator>();
+		for (Operator plan : plans) {
+			optimisedPlans.add(add(this.optimiser.optimise(plan)));
+		}
+		return optimisedPlans;
+	}
+
+	/**
+	 * Add an optimised plan to the batch
+	 * @param plan Optimised plan
+	 * @return The plan, with each sub-plan that an earlier plan of the batch
+	 * also computes replaced by that plan's operator
+	 */
+	public Operator add(Operator plan) {
+		this.reused.clear();
+		Operator shared = share(plan);
+		this.planCount++;
+		return shared;
+	}
+
+	/**
+	 * Return the largest sub-plans of the last plan added that an earlier
+	 * plan of the batch also computes, other than scans
+	 * @return Shared operators, in the order the plan reaches them bottom-up
+	 */
+	public List<Operator> getReusedOperators() {
+		return new ArrayList<Operator>(this.reused);
+	}
+
+	/**
+	 * Return the number of the plan that first computed a shared operator
+	 * @param operator Operator of the batch
+	 * @return Plan number, counting from 0 in the order the plans were added
+	 */
+	public int getPlanNumber(Operator operator) {
+		return this.planNumbers.get(operator);
+	}
+
+	/**
+	 * Replace the sub-plans of operator, bottom-up, by the structurally
+	 * equal operators already in the batch, and add the new ones
+	 * @param operator
+	 * @return Operator of the batch computing the same result
+	 */
+	private Operator share(Operator operator) {
+		List<Operator> inputs = new ArrayList<Operator>();
+		List<PlanKey> inputKeys = new ArrayList<PlanKey>();
+		boolean isChanged = false;
+		if (!(operator instanceof Scan)) {
+			for (Operator input : operator.getInputs()) {
+				Operator shared = share(input);
+				inputs.add(shared);
+				inputKeys.add(this.keys.get(shared));
+				isChanged |= shared != input;
+			}
+		}
+
+		PlanKey key = new PlanKey(operator, inputKeys);
+		Operator existing = this.subPlans.get(key);
+		if (existing != null) {
+			if (this.planNumbers.get(existing) < this.planCount && !(existing instanceof Scan)) {
+				// Only the largest shared sub-plans are reported, so its inputs, which are shared too, are not
+				this.reused.removeAll(existing.getInputs());
+				this.reused.add(existing);
+			}
+			return existing;
+		}
+
+		Operator added = isChanged ? rebuild(operator, inputs) : operator;
+		this.subPlans.put(key, added);
+		this.keys.put(added, key);
+		this.planNumbers.put(added, this.planCount);
+		return added;
+	}
+
+	/**
+	 * Build a copy of an operator over new inputs, which compute the same
+	 * results as its own
+	 * @param op
+	 * @param inputs
+	 * @return Copy, with the estimated output of op
+	 */
+	private static Operator rebuild(Operator op, List<Operator> inputs) {
+		Operator copy;
+		if (op instanceof Select) {
+			copy = new Select(inputs.get(0), ((Select) op).getPredicate());
+		} else if (op instanceof Project) {
+			copy = new Project(inputs.get(0), ((Project) op).getAttributes());
+		} else if (op instanceof Aggregate) {
+			Aggregate aggregate = (Aggregate) op;
+			copy = new Aggregate(inputs.get(0), aggregate.getGroupingAttributes(), aggregate.getFunctions());
+		} else if (op instanceof TopK) {
+			TopK topK = (TopK) op;
+			copy = new TopK(inputs.get(0), topK.getOrderAttributes(), topK.getDescending(), topK.getLimit());
+		} else if (op instanceof IndexJoin) {
+			IndexJoin join = (IndexJoin) op;
+			copy = new IndexJoin(inputs.get(0), inputs.get(1), join.getPredicate(), join.getIndex());
+		} else if (op instanceof Join) {
+			copy = new Join(inputs.get(0), inputs.get(1), ((Join) op).getPredicate());
+		} else if (op instanceof SemiJoin) {
+			copy = new SemiJoin(inputs.get(0), inputs.get(1), ((SemiJoin) op).getPredicate());
+		} else if (op instanceof Product) {
+			copy = new Product(inputs.get(0), inputs.get(1));
+		} else if (op instanceof MultiwayJoin) {
+			copy = new MultiwayJoin(inputs, ((MultiwayJoin) op).getPredicates());
+		} else {
+			throw new IllegalArgumentException("Cannot rebuild operator " + op.getClass().getSimpleName());
+		}
+		copy.setOutput(op.getOutput());
+		return copy;
+	}
+}
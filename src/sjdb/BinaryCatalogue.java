@@ -0,0 +1,687 @@
+package sjdb;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class implements a compact binary form of the system catalogue,
+ * which is memory-mapped rather than parsed, and from which a Catalogue
+ * loads each relation, attribute and foreign key when it is first looked
+ * up.
+ *
+ * Numbers are stored as varints: 7 bits to a byte, lowest first, with the
+ * top bit set on all but the last byte. A string is stored as the varint
+ * length of its UTF-8 bytes, followed by the bytes. The file holds, in
+ * order:
+ *
+ * - a header: the int MAGIC, then the version, the numbers of relations,
+ *   attributes and views, the widths in bytes of a record offset and of
+ *   an attribute number, and the length of the relation records
+ * - the relation table: for each relation, sorted by the bytes of its
+ *   name, the offset of its record and the number of its first attribute
+ * - the name index: the number of each attribute, sorted by the bytes of
+ *   the attribute name, and then by number
+ * - the relation records
+ * - the views, each as its name and its query
+ *
+ * The relation table and the name index hold big-endian numbers of the
+ * widths in the header, so that they can be searched; the rest of the
+ * file is read in order. A relation record holds the relation name, its
+ * tuple count and its number of attributes, and then for each attribute
+ * the length of the prefix its name shares with the name of the
+ * attribute before it, the rest of the name, and its value count. Then
+ * follow the indexes, as attribute position and type, the keys, as
+ * attribute position, and the foreign keys, as attribute position,
+ * referenced relation number and referenced attribute position, each
+ * list after its length.
+ *
+ * Attributes are numbered relation by relation, in the order of the
+ * relation table, so the relation of an attribute is found by a binary
+ * search of the first attribute numbers. A relation is found by a binary
+ * search of the table, and a bare attribute name by a binary search of the
+ * name index, in which the attributes that share a name, and so make it
+ * ambiguous, are next to each other. A qualified attribute name
+ * (Relation.attribute) is found through the record of its relation.
+ */
+public class BinaryCatalogue {
+	private static final int MAGIC = 0x534A4443;
+	private static final int VERSION = 4;
+
+	private ByteBuffer buffer;
+	private int relationCount;
+	private int attributeCount;
+	private int viewCount;
+	private int offsetWidth;
+	private int attributeWidth;
+	private int relationsOffset;
+	private int namesOffset;
+	private int recordsOffset;
+	private int viewsOffset;
+
+	/**
+	 * Read the header of a mapped binary catalogue
+	 * @param buffer
+	 * @throws DatabaseException If the file is not a binary catalogue of this version
+	 */
+	private BinaryCatalogue(ByteBuffer buffer) throws DatabaseException {
+		this.buffer = buffer;
+		Cursor in = new Cursor(4);
+		if (buffer.capacity() < 5 || buffer.getInt(0) != MAGIC || in.readVarint() != VERSION) {
+			throw new DatabaseException("Not a binary catalogue of version " + VERSION);
+		}
+		this.relationCount = in.readVarint();
+		this.attributeCount = in.readVarint();
+		this.viewCount = in.readVarint();
+		this.offsetWidth = in.readVarint();
+		this.attributeWidth = in.readVarint();
+		int recordsLength = in.readVarint();
+		this.relationsOffset = in.position;
+		this.namesOffset = this.relationsOffset + this.relationCount * (this.offsetWidth + this.attributeWidth);
+		this.recordsOffset = this.namesOffset + this.attributeCount * this.attributeWidth;
+		this.viewsOffset = this.recordsOffset + recordsLength;
+	}
+
+	/**
+	 * Return true if the file starts like a binary catalogue
+	 * @param filename
+	 * @return
+	 */
+	public static boolean isBinary(String filename) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+			return in.available() >= 4 && in.readInt() == MAGIC;
+		}
+	}
+
+	/**
+	 * Map a binary catalogue file, and return a catalogue that loads its
+	 * entries from it when they are first looked up. Only the views are
+	 * created at once, as the optimiser looks through all of them.
+	 * @param filename
+	 * @return Catalogue
+	 */
+	public static Catalogue load(String filename) throws IOException, DatabaseException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		BinaryCatalogue source = new BinaryCatalogue(buffer);
+		Catalogue catalogue = new Catalogue(source);
+		Cursor in = source.new Cursor(source.viewsOffset);
+		for (int v = 0; v < source.viewCount; v++) {
+			String name = in.readString();
+			catalogue.createView(name, in.readString());
+		}
+		return catalogue;
+	}
+
+	/**
+	 * Build the named relation, with its attributes, indexes and keys,
+	 * and add it to the catalogue
+	 * @param name
+	 * @param catalogue
+	 * @return Named relation, or null if there is no such relation
+	 */
+	NamedRelation loadRelation(String name, Catalogue catalogue) {
+		int r = findRelation(name.getBytes(StandardCharsets.UTF_8));
+		if (r < 0) {
+			return null;
+		}
+		Cursor in = new Cursor(getRecord(r));
+		in.skipString();
+		NamedRelation reln = new NamedRelation(name, in.readVarint());
+
+		Attribute[] attributes = new Attribute[in.readVarint()];
+		byte[] attrName = new byte[0];
+		for (int a = 0; a < attributes.length; a++) {
+			attrName = in.readAttributeName(attrName);
+			attributes[a] = new Attribute(new String(attrName, StandardCharsets.UTF_8), in.readVarint(), name);
+			reln.addAttribute(attributes[a]);
+		}
+		for (int i = in.readVarint(); i > 0; i--) {
+			Attribute attr = attributes[in.readVarint()];
+			reln.addIndex(new Index(attr, Index.Type.values()[in.readVarint()]));
+		}
+		for (int k = in.readVarint(); k > 0; k--) {
+			reln.addKey(attributes[in.readVarint()]);
+		}
+
+		catalogue.addRelation(reln);
+		return reln;
+	}
+
+	/**
+	 * Load the relation that declares an attribute, and return the
+	 * attribute
+	 * @param name Qualified or bare attribute name
+	 * @param catalogue
+	 * @return Attribute, or null if there is none
+	 */
+	Attribute loadAttribute(String name, Catalogue catalogue) throws DatabaseException {
+		int attr = findAttribute(name);
+		return attr < 0 ? null : loadAttribute(attr, catalogue);
+	}
+
+	/**
+	 * Return true if several attributes have the given bare name. This
+	 * only reads the mapped file.
+	 * @param name
+	 * @return
+	 */
+	boolean isAmbiguous(String name) {
+		byte[] key = name.getBytes(StandardCharsets.UTF_8);
+		int n = findName(key);
+		return n >= 0 && isAmbiguous(n, key);
+	}
+
+	/**
+	 * Return true if a foreign key is declared on an attribute. This only
+	 * reads the mapped file.
+	 * @param name Qualified or bare attribute name
+	 * @return
+	 */
+	boolean hasForeignKey(String name) {
+		int attr = findAttribute(name);
+		return attr >= 0 && findForeignKey(attr) != null;
+	}
+
+	/**
+	 * Build the foreign key declared on an attribute, and add it to the
+	 * catalogue
+	 * @param name Qualified or bare attribute name
+	 * @param catalogue
+	 * @return Foreign key, or null if there is none
+	 */
+	ForeignKey loadForeignKey(String name, Catalogue catalogue) {
+		int attr = findAttribute(name);
+		int[] fk = attr < 0 ? null : findForeignKey(attr);
+		if (fk == null) {
+			return null;
+		}
+
+		try {
+			NamedRelation refReln = catalogue.getRelation(getRelationName(fk[0]));
+			Attribute refAttribute = refReln.getAttributes().get(fk[1]);
+			ForeignKey foreignKey = new ForeignKey(loadAttribute(attr, catalogue), refReln, refAttribute);
+			catalogue.addForeignKey(foreignKey);
+			return foreignKey;
+		} catch (DatabaseException e) {
+			// The records refer to each other by number, so this only happens if the file is corrupt
+			throw new IllegalStateException("Corrupt binary catalogue", e);
+		}
+	}
+
+	/**
+	 * Load the relation that declares a numbered attribute, and return
+	 * the attribute
+	 * @param attr
+	 * @param catalogue
+	 * @return Attribute
+	 */
+	private Attribute loadAttribute(int attr, Catalogue catalogue) throws DatabaseException {
+		int r = relationOf(attr);
+		NamedRelation reln = catalogue.getRelation(getRelationName(r));
+		return reln.getAttributes().get(attr - getFirstAttribute(r));
+	}
+
+	/**
+	 * Return the number of the attribute with a name; a bare name that
+	 * is ambiguous finds no attribute, as in the text catalogue
+	 * @param name Qualified or bare attribute name
+	 * @return Attribute number, or -1
+	 */
+	private int findAttribute(String name) {
+		int dot = name.indexOf('.');
+		if (dot >= 0) {
+			int r = findRelation(name.substring(0, dot).getBytes(StandardCharsets.UTF_8));
+			if (r < 0) {
+				return -1;
+			}
+			byte[] key = name.substring(dot + 1).getBytes(StandardCharsets.UTF_8);
+			Cursor in = new Cursor(getRecord(r));
+			in.skipString();
+			in.readVarint();
+			int count = in.readVarint();
+			byte[] attrName = new byte[0];
+			for (int a = 0; a < count; a++) {
+				attrName = in.readAttributeName(attrName);
+				in.readVarint();
+				if (Arrays.equals(attrName, key)) {
+					return getFirstAttribute(r) + a;
+				}
+			}
+			return -1;
+		}
+		byte[] key = name.getBytes(StandardCharsets.UTF_8);
+		int n = findName(key);
+		return n < 0 || isAmbiguous(n, key) ? -1 : getNameEntry(n);
+	}
+
+	/**
+	 * Return the referenced relation number and attribute position of the
+	 * foreign key declared on a numbered attribute
+	 * @param attr
+	 * @return Referenced relation and attribute position, or null if there is no foreign key
+	 */
+	private int[] findForeignKey(int attr) {
+		int r = relationOf(attr);
+		int position = attr - getFirstAttribute(r);
+		Cursor in = new Cursor(getRecord(r));
+		in.skipString();
+		in.readVarint();
+		for (int a = in.readVarint(); a > 0; a--) {
+			in.readVarint();
+			in.skipString();
+			in.readVarint();
+		}
+		for (int i = in.readVarint(); i > 0; i--) {
+			in.readVarint();
+			in.readVarint();
+		}
+		for (int k = in.readVarint(); k > 0; k--) {
+			in.readVarint();
+		}
+		for (int f = in.readVarint(); f > 0; f--) {
+			int fkPosition = in.readVarint();
+			int refRelation = in.readVarint();
+			int refPosition = in.readVarint();
+			if (fkPosition == position) {
+				return new int[] {refRelation, refPosition};
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return the number of the relation with a name
+	 * @param key UTF-8 bytes of the name
+	 * @return Relation number, or -1
+	 */
+	private int findRelation(byte[] key) {
+		int low = 0;
+		int high = this.relationCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			Cursor in = new Cursor(getRecord(mid));
+			int cmp = compareBytes(in.readBytes(in.readVarint()), key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the position in the name index of an attribute with a name
+	 * @param key UTF-8 bytes of the name
+	 * @return Position of one of the attributes with the name, or -1
+	 */
+	private int findName(byte[] key) {
+		int low = 0;
+		int high = this.attributeCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareBytes(getAttributeName(getNameEntry(mid)), key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return true if the attribute at a position in the name index shares
+	 * its name with another, which is then next to it
+	 * @param n Position in the name index
+	 * @param key UTF-8 bytes of the name
+	 * @return
+	 */
+	private boolean isAmbiguous(int n, byte[] key) {
+		return (n > 0 && Arrays.equals(getAttributeName(getNameEntry(n - 1)), key))
+				|| (n + 1 < this.attributeCount && Arrays.equals(getAttributeName(getNameEntry(n + 1)), key));
+	}
+
+	/**
+	 * Return the number of the relation that declares a numbered
+	 * attribute: the last whose first attribute is not after it (a
+	 * relation without attributes has the same first attribute as the
+	 * next one)
+	 * @param attr
+	 * @return Relation number
+	 */
+	private int relationOf(int attr) {
+		int low = 0;
+		int high = this.relationCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (getFirstAttribute(mid) <= attr) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Return the name of a numbered attribute, read from the record of its
+	 * relation
+	 * @param attr
+	 * @return UTF-8 bytes of the name
+	 */
+	private byte[] getAttributeName(int attr) {
+		int r = relationOf(attr);
+		Cursor in = new Cursor(getRecord(r));
+		in.skipString();
+		in.readVarint();
+		in.readVarint();
+		byte[] name = new byte[0];
+		for (int a = getFirstAttribute(r); a <= attr; a++) {
+			name = in.readAttributeName(name);
+			in.readVarint();
+		}
+		return name;
+	}
+
+	private String getRelationName(int r) {
+		return new Cursor(getRecord(r)).readString();
+	}
+
+	private int getRecord(int r) {
+		return this.recordsOffset + readFixed(this.relationsOffset + r * (this.offsetWidth + this.attributeWidth),
+				this.offsetWidth);
+	}
+
+	private int getFirstAttribute(int r) {
+		return readFixed(this.relationsOffset + r * (this.offsetWidth + this.attributeWidth) + this.offsetWidth,
+				this.attributeWidth);
+	}
+
+	private int getNameEntry(int n) {
+		return readFixed(this.namesOffset + n * this.attributeWidth, this.attributeWidth);
+	}
+
+	/**
+	 * Read a big-endian number of the given width in bytes
+	 * @param position
+	 * @param width
+	 * @return
+	 */
+	private int readFixed(int position, int width) {
+		int value = 0;
+		for (int i = 0; i < width; i++) {
+			value = (value << 8) | (this.buffer.get(position + i) & 0xff);
+		}
+		return value;
+	}
+
+	/**
+	 * A position in the mapped file, from which numbers and strings are
+	 * read in order. Each lookup reads through its own cursor, so that
+	 * lookups do not share any state.
+	 */
+	private class Cursor {
+		private int position;
+
+		private Cursor(int position) {
+			this.position = position;
+		}
+
+		private int readVarint() {
+			int value = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = buffer.get(this.position++);
+				value |= (b & 0x7f) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+
+		private byte[] readBytes(int length) {
+			byte[] bytes = new byte[length];
+			for (int i = 0; i < length; i++) {
+				bytes[i] = buffer.get(this.position++);
+			}
+			return bytes;
+		}
+
+		private String readString() {
+			return new String(readBytes(readVarint()), StandardCharsets.UTF_8);
+		}
+
+		private void skipString() {
+			int length = readVarint();
+			this.position += length;
+		}
+
+		/**
+		 * Read the name of an attribute, which is stored as the part of
+		 * it that follows the prefix it shares with the previous name
+		 * @param previous UTF-8 bytes of the name of the attribute before it
+		 * @return UTF-8 bytes of the name
+		 */
+		private byte[] readAttributeName(byte[] previous) {
+			int prefix = readVarint();
+			int length = readVarint();
+			byte[] name = Arrays.copyOf(previous, prefix + length);
+			for (int i = prefix; i < name.length; i++) {
+				name[i] = buffer.get(this.position++);
+			}
+			return name;
+		}
+	}
+
+	/**
+	 * Write the relations, foreign keys and views of a catalogue to a
+	 * binary catalogue file
+	 * @param catalogue
+	 * @param filename
+	 * @throws DatabaseException If a view was not declared by a query, or an index, key or foreign key
+	 * names an attribute its relation does not declare
+	 */
+	public static void write(Catalogue catalogue, String filename) throws IOException, DatabaseException {
+		Set<String> viewNames = new HashSet<String>();
+		for (MaterializedView view : catalogue.getViews()) {
+			if (view.getQuery() == null) {
+				throw new DatabaseException("View " + view.getRelation() + " was not declared by a query");
+			}
+			viewNames.add(view.getRelation().toString());
+		}
+		List<NamedRelation> relations = new ArrayList<NamedRelation>();
+		for (NamedRelation reln : catalogue.getRelations()) {
+			if (!viewNames.contains(reln.toString())) {
+				relations.add(reln);
+			}
+		}
+		relations.sort((a, b) -> compareBytes(a.toString().getBytes(StandardCharsets.UTF_8),
+				b.toString().getBytes(StandardCharsets.UTF_8)));
+		Map<String, Integer> relationNumbers = new HashMap<String, Integer>();
+		for (int r = 0; r < relations.size(); r++) {
+			relationNumbers.put(relations.get(r).toString(), r);
+		}
+		Map<String, List<ForeignKey>> foreignKeys = new HashMap<String, List<ForeignKey>>();
+		for (ForeignKey fk : catalogue.getForeignKeys()) {
+			foreignKeys.computeIfAbsent(fk.getAttribute().getRelation(), name -> new ArrayList<ForeignKey>()).add(fk);
+		}
+
+		// Attributes are numbered in the order they are written, relation by relation
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		int[] recordOffsets = new int[relations.size()];
+		int[] firstAttributes = new int[relations.size()];
+		List<byte[]> attributeNames = new ArrayList<byte[]>();
+		for (int r = 0; r < relations.size(); r++) {
+			NamedRelation reln = relations.get(r);
+			recordOffsets[r] = records.size();
+			firstAttributes[r] = attributeNames.size();
+			writeString(records, reln.toString());
+			writeVarint(records, reln.getTupleCount());
+			writeVarint(records, reln.getAttributes().size());
+			byte[] previous = new byte[0];
+			for (Attribute attr : reln.getAttributes()) {
+				byte[] name = attr.getName().getBytes(StandardCharsets.UTF_8);
+				int prefix = 0;
+				while (prefix < Math.min(name.length, previous.length) && name[prefix] == previous[prefix]) {
+					prefix++;
+				}
+				writeVarint(records, prefix);
+				writeVarint(records, name.length - prefix);
+				records.write(name, prefix, name.length - prefix);
+				writeVarint(records, attr.getValueCount());
+				attributeNames.add(name);
+				previous = name;
+			}
+
+			writeVarint(records, reln.getIndexes().size());
+			for (Index index : reln.getIndexes()) {
+				writeVarint(records, positionOf(reln, index.getAttribute()));
+				writeVarint(records, index.getType().ordinal());
+			}
+			writeVarint(records, reln.getKeys().size());
+			for (Attribute key : reln.getKeys()) {
+				writeVarint(records, positionOf(reln, key));
+			}
+			List<ForeignKey> relnForeignKeys = foreignKeys.getOrDefault(reln.toString(), new ArrayList<ForeignKey>());
+			writeVarint(records, relnForeignKeys.size());
+			for (ForeignKey fk : relnForeignKeys) {
+				NamedRelation refReln = fk.getReferencedRelation();
+				writeVarint(records, positionOf(reln, fk.getAttribute()));
+				writeVarint(records, relationNumbers.get(refReln.toString()));
+				writeVarint(records, positionOf(refReln, fk.getReferencedAttribute()));
+			}
+		}
+
+		// Attributes that share a name are next to each other, in number order
+		Integer[] names = new Integer[attributeNames.size()];
+		for (int a = 0; a < names.length; a++) {
+			names[a] = a;
+		}
+		Arrays.sort(names, (a, b) -> {
+			int cmp = compareBytes(attributeNames.get(a), attributeNames.get(b));
+			return cmp != 0 ? cmp : Integer.compare(a, b);
+		});
+
+		ByteArrayOutputStream views = new ByteArrayOutputStream();
+		for (MaterializedView view : catalogue.getViews()) {
+			writeString(views, view.getRelation().toString());
+			writeString(views, view.getQuery());
+		}
+
+		int offsetWidth = widthOf(records.size());
+		int attributeWidth = widthOf(attributeNames.size());
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+			out.writeInt(MAGIC);
+			for (int value : new int[] {VERSION, relations.size(), attributeNames.size(), catalogue.getViews().size(),
+					offsetWidth, attributeWidth, records.size()}) {
+				writeVarint(out, value);
+			}
+			for (int r = 0; r < relations.size(); r++) {
+				writeFixed(out, recordOffsets[r], offsetWidth);
+				writeFixed(out, firstAttributes[r], attributeWidth);
+			}
+			for (int attr : names) {
+				writeFixed(out, attr, attributeWidth);
+			}
+			records.writeTo(out);
+			views.writeTo(out);
+		}
+	}
+
+	/**
+	 * Return the position of an attribute among those of its relation,
+	 * looking it up by name if it is not one of the relation's own objects
+	 * @param reln
+	 * @param attr
+	 * @return Position
+	 * @throws DatabaseException If the relation has no attribute with the name
+	 */
+	private static int positionOf(NamedRelation reln, Attribute attr) throws DatabaseException {
+		List<Attribute> attributes = reln.getAttributes();
+		for (int a = 0; a < attributes.size(); a++) {
+			if (attributes.get(a) == attr) {
+				return a;
+			}
+		}
+		for (int a = 0; a < attributes.size(); a++) {
+			if (attributes.get(a).getName().equals(attr.getName())) {
+				return a;
+			}
+		}
+		throw new DatabaseException("Attribute " + attr + " is not an attribute of " + reln);
+	}
+
+	/**
+	 * Return the number of bytes needed to write the numbers from 0 to max
+	 * @param max
+	 * @return Width, from 1 to 4
+	 */
+	private static int widthOf(int max) {
+		int width = 1;
+		while (width < 4 && (max >>> (8 * width)) != 0) {
+			width++;
+		}
+		return width;
+	}
+
+	private static void writeFixed(DataOutputStream out, int value, int width) throws IOException {
+		for (int i = width - 1; i >= 0; i--) {
+			out.write(value >>> (8 * i));
+		}
+	}
+
+	private static void writeVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Compare strings by their UTF-8 bytes, as the loader does
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	private static int compareBytes(byte[] x, byte[] y) {
+		for (int i = 0; i < Math.min(x.length, y.length); i++) {
+			int cmp = (x[i] & 0xff) - (y[i] & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return x.length - y.length;
+	}
+}
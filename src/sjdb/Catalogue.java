@@ -1,6 +1,12 @@
 package sjdb;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class contains the system catalogue for the database; it
@@ -8,26 +14,131 @@ import java.util.HashMap;
  * 
  * - creating new NamedRelations
  * - creating new Attributes
+ * - declaring secondary Indexes on attributes
+ * - declaring keys and ForeignKeys
+ * - registering MaterializedViews
  * 
- * The catalogue maintains a directory of NamedRelations and
- * Attributes, indexed by name.
+ * The catalogue maintains a directory of NamedRelations,
+ * Attributes, ForeignKeys and MaterializedViews, indexed by
+ * (attribute or view) name.
+ * 
+ * Attributes and ForeignKeys are indexed by the qualified name of the
+ * attribute (Relation.attribute), and also by its bare name, as long
+ * as no other relation declares an attribute of the same name; a bare
+ * name that is shared by several relations is ambiguous, and must be
+ * qualified to be looked up.
  * 
  * Note that any statistical information about named relations or
  * the attributes therein is stored on the relations or attributes,
  * and not in the catalogue.
  * 
+ * A catalogue loaded from a BinaryCatalogue file starts empty, and
+ * each NamedRelation (with its attributes, indexes and keys) and
+ * ForeignKey is added to the directory the first time it is looked up.
+ * 
  * @author nmg
  *
  */
 public class Catalogue {
 	
-	private HashMap<String, NamedRelation> relations;
-	private HashMap<String, Attribute> attributes;
+	// Concurrent, as a lazily loaded catalogue is filled in while it is shared
+	private Map<String, NamedRelation> relations;
+	private Map<String, Attribute> attributes;
+	private Map<String, ForeignKey> foreignKeys;
+	private Set<String> ambiguousNames;
+	private LinkedHashMap<String, MaterializedView> views;
+	private BinaryCatalogue source;
 
 
 	public Catalogue() {
-		this.relations = new HashMap<String, NamedRelation>();
-		this.attributes = new HashMap<String, Attribute>();
+		this.relations = new ConcurrentHashMap<String, NamedRelation>();
+		this.attributes = new ConcurrentHashMap<String, Attribute>();
+		this.foreignKeys = new ConcurrentHashMap<String, ForeignKey>();
+		this.ambiguousNames = ConcurrentHashMap.newKeySet();
+		this.views = new LinkedHashMap<String, MaterializedView>();
+	}
+	
+	/**
+	 * Create a catalogue whose entries are loaded from the specified
+	 * binary catalogue when they are first looked up.
+	 * 
+	 * @param source
+	 */
+	Catalogue(BinaryCatalogue source) {
+		this();
+		this.source = source;
+	}
+	
+	/**
+	 * Add a fully built NamedRelation and its attributes to the directory.
+	 * The relation is added last, so that it is only found once complete.
+	 * 
+	 * @param reln
+	 */
+	void addRelation(NamedRelation reln) {
+		for (Attribute attr : reln.getAttributes()) {
+			addAttribute(reln.toString(), attr);
+		}
+		relations.put(reln.toString(), reln);
+	}
+	
+	private void addAttribute(String relName, Attribute attr) {
+		attributes.put(relName + "." + attr.getName(), attr);
+		Attribute other = attributes.putIfAbsent(attr.getName(), attr);
+		if (other!=null && other!=attr) {
+			ambiguousNames.add(attr.getName());
+		}
+	}
+	
+	/**
+	 * Add a ForeignKey to the directory.
+	 * 
+	 * @param fk
+	 */
+	void addForeignKey(ForeignKey fk) {
+		Attribute attr = fk.getAttribute();
+		foreignKeys.put(attr.getRelation() + "." + attr.getName(), fk);
+		foreignKeys.putIfAbsent(attr.getName(), fk);
+	}
+	
+	/**
+	 * Return true if more than one relation declares an attribute with the
+	 * specified bare name. For a lazily loaded catalogue, this is read from
+	 * the file, as the relations that share the name may not have been
+	 * looked up yet.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	boolean isAmbiguous(String name) {
+		if (ambiguousNames.contains(name)) {
+			return true;
+		}
+		if (source!=null && name.indexOf('.')<0 && source.isAmbiguous(name)) {
+			ambiguousNames.add(name);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Return the NamedRelations in the directory (for a lazily loaded
+	 * catalogue, only those looked up so far).
+	 * 
+	 * @return
+	 */
+	Collection<NamedRelation> getRelations() {
+		return new ArrayList<NamedRelation>(relations.values());
+	}
+	
+	/**
+	 * Return the ForeignKeys in the directory (for a lazily loaded
+	 * catalogue, only those looked up so far).
+	 * 
+	 * @return
+	 */
+	Collection<ForeignKey> getForeignKeys() {
+		return new ArrayList<ForeignKey>(foreignKeys.values());
 	}
 	
 	/**
@@ -54,12 +165,143 @@ public class Catalogue {
 	 * @return
 	 */
 	public Attribute createAttribute(String relName, String attName, int values) {
-		Attribute attr = new Attribute(attName, values);
-		attributes.put(attName, attr);
+		Attribute attr = new Attribute(attName, values, relName);
+		addAttribute(relName, attr);
 		relations.get(relName).addAttribute(attr);
 		return attr;
 	}
 	
+	/**
+	 * Declare a secondary index of the specified type on an attribute of
+	 * the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param type
+	 * @return
+	 */
+	public Index createIndex(String relName, String attName, Index.Type type) throws DatabaseException {
+		NamedRelation reln = getRelation(relName);
+		Index index = new Index(getAttribute(relName + "." + attName), type);
+		reln.addIndex(index);
+		return index;
+	}
+	
+	/**
+	 * Declare an attribute of the specified NamedRelation as a key.
+	 * 
+	 * @param relName
+	 * @param attName
+	 */
+	public void createKey(String relName, String attName) throws DatabaseException {
+		getRelation(relName).addKey(getAttribute(relName + "." + attName));
+	}
+	
+	/**
+	 * Declare a foreign key from an attribute of one NamedRelation to a key
+	 * of another, and add it to the directory.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param refRelName
+	 * @param refAttName
+	 * @return
+	 */
+	public ForeignKey createForeignKey(String relName, String attName, String refRelName, String refAttName)
+			throws DatabaseException {
+		getRelation(relName);
+		NamedRelation refReln = getRelation(refRelName);
+		Attribute refAttr = getAttribute(refRelName + "." + refAttName);
+		
+		if (!refReln.isKey(refAttr)) {
+			throw new DatabaseException("Attribute " + refAttName + " is not a key of " + refRelName);
+		}
+		
+		ForeignKey fk = new ForeignKey(getAttribute(relName + "." + attName), refReln, refAttr);
+		addForeignKey(fk);
+		return fk;
+	}
+	
+	/**
+	 * Return the ForeignKey declared on the specified attribute, or null
+	 * if the attribute does not reference another relation. The attribute
+	 * is looked up by the name of its relation, if it records one, and
+	 * otherwise by its bare name, unless that is ambiguous.
+	 * 
+	 * @param attr
+	 * @return
+	 */
+	public ForeignKey getForeignKey(Attribute attr) {
+		String key = attr.getRelation()!=null ? attr.getRelation() + "." + attr.getName() : attr.getName();
+		if (attr.getRelation()==null && isAmbiguous(key)) {
+			return null;
+		}
+		ForeignKey fk = foreignKeys.get(key);
+		
+		// Most attributes have no foreign key, so the file is checked before taking the lock
+		if (fk==null && source!=null && source.hasForeignKey(key)) {
+			synchronized (this) {
+				fk = foreignKeys.get(key);
+				if (fk==null) {
+					fk = source.loadForeignKey(key, this);
+				}
+			}
+		}
+		
+		return fk;
+	}
+	
+	/**
+	 * Register a MaterializedView holding the result of the specified
+	 * canonical plan. The result is added to the directory as a
+	 * NamedRelation with the specified name, whose statistics are those
+	 * estimated for the plan.
+	 * 
+	 * @param viewName
+	 * @param definition
+	 * @return
+	 */
+	public MaterializedView createView(String viewName, Operator definition) throws DatabaseException {
+		return createView(viewName, definition, null);
+	}
+	
+	/**
+	 * Register a MaterializedView holding the result of the specified
+	 * query, as createView(String, Operator) does, and record its text.
+	 * 
+	 * @param viewName
+	 * @param query
+	 * @return
+	 */
+	public MaterializedView createView(String viewName, String query) throws DatabaseException {
+		return createView(viewName, new ReusableQueryParser(this).parse(query), query);
+	}
+	
+	private MaterializedView createView(String viewName, Operator definition, String query) throws DatabaseException {
+		definition.accept(new Estimator(this));
+		Relation result = definition.getOutput();
+		
+		// The attributes keep their names, but not their directory entries, which describe the base relations
+		NamedRelation reln = new NamedRelation(viewName, result.getTupleCount());
+		for (Attribute attr : result.getAttributes()) {
+			reln.addAttribute(new Attribute(attr));
+		}
+		
+		MaterializedView view = new MaterializedView(reln, definition, query);
+		relations.put(viewName, reln);
+		views.put(viewName, view);
+		return view;
+	}
+	
+	/**
+	 * Return the MaterializedViews, in the order they were registered.
+	 * 
+	 * @return
+	 */
+	public List<MaterializedView> getViews() {
+		return new ArrayList<MaterializedView>(views.values());
+	}
+	
 	/**
 	 * Return the NamedRelation with the specified name.
 	 * 
@@ -69,6 +311,15 @@ public class Catalogue {
 	public NamedRelation getRelation(String name) throws DatabaseException {
 		NamedRelation reln = relations.get(name);
 		
+		if (reln==null && source!=null) {
+			synchronized (this) {
+				reln = relations.get(name);
+				if (reln==null) {
+					reln = source.loadRelation(name, this);
+				}
+			}
+		}
+		
 		if (reln==null) {
 			throw new DatabaseException("Named relation " + name + " not found");
 		}
@@ -77,14 +328,28 @@ public class Catalogue {
 	}
 	
 	/**
-	 * Return the Attribute with the specified name.
+	 * Return the Attribute with the specified name, which is either
+	 * qualified (Relation.attribute) or the bare name of an attribute
+	 * declared by a single relation.
 	 * 
 	 * @param name
 	 * @return
 	 */
 	public Attribute getAttribute(String name) throws DatabaseException {
+		if (isAmbiguous(name)) {
+			throw new DatabaseException("Attribute " + name + " is ambiguous, and must be qualified by its relation");
+		}
 		Attribute attr = attributes.get(name);
 		
+		if (attr==null && source!=null) {
+			synchronized (this) {
+				attr = attributes.get(name);
+				if (attr==null) {
+					attr = source.loadAttribute(name, this);
+				}
+			}
+		}
+		
 		if (attr==null) {
 			throw new DatabaseException("Attribute " + name + " not found");
 		}
@@ -0,0 +1,12 @@
+package sjdb;
+
+// Converts a text catalogue, as read by CatalogueParser, to the binary format read by BinaryCatalogue.
+// Usage: CatalogueConverter <text catalogue file> <binary catalogue file>
+public class CatalogueConverter {
+    public static void main(String[] args) throws Exception {
+        Catalogue catalogue = new Catalogue();
+        // A partly read catalogue must not be written out, so any error stops the conversion
+        new CatalogueParser(args[0], catalogue).parseStrictly();
+        BinaryCatalogue.write(catalogue, args[1]);
+    }
+}
@@ -10,6 +10,25 @@ import java.io.*;
  * 
  * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
  * 
+ * Secondary indexes are declared on lines of the form:
+ * 
+ * INDEX:<relation name>:<attr name>:<BTREE|HASH>
+ * 
+ * and keys and foreign keys on lines of the form:
+ * 
+ * KEY:<relation name>:<attr name>
+ * FOREIGNKEY:<relation name>:<attr name>:<referenced relation name>:<referenced attr name>
+ * 
+ * Materialized views are declared on lines of the form:
+ * 
+ * VIEW:<view name>:SELECT ... FROM ... WHERE ...
+ * 
+ * where the query is a select-project-join query as read by
+ * ReusableQueryParser, written on a single line.
+ * 
+ * These lines must follow the lines describing the relations they name,
+ * and a foreign key must reference a declared key.
+ * 
  * @author nmg
  */
 public class CatalogueParser {
@@ -31,17 +50,40 @@ public class CatalogueParser {
 	}
 	
 	public void parse() {
-		String line;
-
 		try {
-			while ((line = this.read.readLine()) != null) {
-				parseRelation(line.split(":", 0));
-			}
+			parseStrictly();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Parse the catalogue, stopping at the first error rather than
+	 * reporting it and carrying on with what was read so far
+	 * @throws Exception
+	 */
+	public void parseStrictly() throws Exception {
+		String line;
+
+		if (this.read == null) {
+			throw new DatabaseException("Catalogue file could not be opened");
+		}
+		while ((line = this.read.readLine()) != null) {
+			String[] parts = line.split(":", 0);
+			if (parts[0].equals("VIEW")) {
+				parseView(line.split(":", 3));
+			} else if (parts[0].equals("INDEX")) {
+				parseIndex(parts);
+			} else if (parts[0].equals("KEY")) {
+				parseKey(parts);
+			} else if (parts[0].equals("FOREIGNKEY")) {
+				parseForeignKey(parts);
+			} else {
+				parseRelation(parts);
+			}
+		}
+	}
+	
 	private void parseRelation(String[] parts) {
 		String reln = parts[0];
 		int size = Integer.decode(parts[1]).intValue();
@@ -53,6 +95,22 @@ public class CatalogueParser {
 		}
 	}
 
+	private void parseIndex(String[] parts) throws DatabaseException {
+		catalogue.createIndex(parts[1], parts[2], Index.Type.valueOf(parts[3].trim()));
+	}
+
+	private void parseKey(String[] parts) throws DatabaseException {
+		catalogue.createKey(parts[1], parts[2].trim());
+	}
+
+	private void parseForeignKey(String[] parts) throws DatabaseException {
+		catalogue.createForeignKey(parts[1], parts[2], parts[3], parts[4].trim());
+	}
+
+	private void parseView(String[] parts) throws DatabaseException {
+		catalogue.createView(parts[1], parts[2]);
+	}
+
 	private void parseAttribute(String reln, String[] parts) {
 		String attr = parts[0];
 		int values = Integer.decode(parts[1]).intValue();
@@ -1,27 +1,43 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 public class Estimator implements PlanVisitor {
-
+    // Used for key and foreign key information, may be null
+    private Catalogue catalogue;
 
     public Estimator() {
         // empty constructor
     }
 
+    public Estimator(Catalogue catalogue) {
+        this.catalogue = catalogue;
+    }
+
     /*
      * Create output relation on Scan operator
      *
      * Example implementation of visit method for Scan operators.
      */
     public void visit(Scan op) {
+        op.setOutput(scanOutput(op));
+    }
+
+    // The attributes of the named relation, qualified as the scan outputs them
+    private static Relation scanOutput(Scan op) {
         Relation inputRelation = op.getRelation();
         Relation outputRelation = new Relation(inputRelation.getTupleCount());
 
-        inputRelation.getAttributes().forEach(attribute -> outputRelation.addAttribute(new Attribute(attribute)));
+        inputRelation.getAttributes().forEach(attribute -> outputRelation.addAttribute(op.getOutputAttribute(attribute)));
 
-        op.setOutput(outputRelation);
+        return outputRelation;
     }
 
     public void visit(Project op) {
@@ -29,8 +45,8 @@ public class Estimator implements PlanVisitor {
         Relation outputRelation = new Relation(inputRelation.getTupleCount());
 
         op.getAttributes().stream()
-                .filter(attr -> inputRelation.getAttributes().contains(attr))
-                .forEach(attr -> outputRelation.addAttribute(new Attribute(attr.getName(), inputRelation.getAttribute(attr).getValueCount())));
+                .filter(inputRelation::hasAttribute)
+                .forEach(attr -> outputRelation.addAttribute(new Attribute(attr, inputRelation.getAttribute(attr).getValueCount())));
 
         op.setOutput(outputRelation);
     }
@@ -41,17 +57,9 @@ public class Estimator implements PlanVisitor {
         Relation outputRelation;
 
         if (predicate.equalsValue()) {
-            String predicateAttrName = predicate.getLeftAttribute().getName();
-            Attribute inputAttribute = inputRelation.getAttribute(new Attribute(predicateAttrName));
-
-            int estimatedTuples = inputRelation.getTupleCount() / inputAttribute.getValueCount();
-            outputRelation = new Relation(estimatedTuples);
-
-            inputRelation.getAttributes()
-                    .forEach(attr -> {
-                        int valueCount = isSameAttr(predicateAttrName, attr) ? 1 : attr.getValueCount();
-                        outputRelation.addAttribute(new Attribute(attr.getName(), valueCount));
-                    });
+            outputRelation = estimateValueSelection(inputRelation, predicate);
+        } else if (!predicate.equalsAttribute()) {
+            outputRelation = estimateDisjunctiveSelection(inputRelation, predicate);
         } else {
             Attribute leftAttr = inputRelation.getAttribute(predicate.getLeftAttribute());
             Attribute rightAttr = inputRelation.getAttribute(predicate.getRightAttribute());
@@ -63,15 +71,87 @@ public class Estimator implements PlanVisitor {
             int minAttrValues = Math.min(leftAttr.getValueCount(), rightAttr.getValueCount());
             inputRelation.getAttributes()
                     .forEach(attr -> {
-                        int valueCount = isSameAttr(leftAttr.getName(), attr) || isSameAttr(rightAttr.getName(), attr)
+                        int valueCount = isSameAttr(leftAttr, attr) || isSameAttr(rightAttr, attr)
                                 ? minAttrValues : attr.getValueCount();
-                        outputRelation.addAttribute(new Attribute(attr.getName(), valueCount));
+                        outputRelation.addAttribute(new Attribute(attr, valueCount));
                     });
         }
 
         op.setOutput(outputRelation);
     }
 
+    // An index lookup returns the same tuples as a Select over the full Scan
+    public void visit(IndexScan op) {
+        Predicate predicate = op.getPredicate();
+        Relation inputRelation = scanOutput(op);
+        op.setOutput(predicate.equalsValue()
+                ? estimateValueSelection(inputRelation, predicate)
+                : estimateDisjunctiveSelection(inputRelation, predicate));
+    }
+
+    // Estimate the output of an attr=value predicate applied to inputRelation
+    private static Relation estimateValueSelection(Relation inputRelation, Predicate predicate) {
+        Attribute inputAttribute = inputRelation.getAttribute(predicate.getLeftAttribute());
+
+        int estimatedTuples = inputRelation.getTupleCount() / inputAttribute.getValueCount();
+        Relation outputRelation = new Relation(estimatedTuples);
+
+        inputRelation.getAttributes()
+                .forEach(attr -> {
+                    int valueCount = isSameAttr(inputAttribute, attr) ? 1 : attr.getValueCount();
+                    outputRelation.addAttribute(new Attribute(attr, valueCount));
+                });
+        return outputRelation;
+    }
+
+    // Estimate the output of an in-list or a disjunction applied to inputRelation
+    private static Relation estimateDisjunctiveSelection(Relation inputRelation, Predicate predicate) {
+        List<Predicate> disjuncts = predicate.isDisjunction()
+                ? predicate.getDisjuncts() : Collections.singletonList(predicate);
+
+        // Different values of one attribute select disjoint sets of tuples, so they are collected per attribute
+        // and their selectivities are simply summed
+        Map<Attribute, Set<String>> valuesByAttr = new LinkedHashMap<>();
+        List<Predicate> attrPredicates = new ArrayList<>();
+        for (Predicate disjunct : disjuncts) {
+            if (disjunct.equalsValue()) {
+                valuesByAttr.computeIfAbsent(disjunct.getLeftAttribute(), attr -> new HashSet<>())
+                        .add(disjunct.getRightValue());
+            } else if (disjunct.isInList()) {
+                valuesByAttr.computeIfAbsent(disjunct.getLeftAttribute(), attr -> new HashSet<>())
+                        .addAll(disjunct.getRightValues());
+            } else {
+                attrPredicates.add(disjunct);
+            }
+        }
+
+        // Terms on different attributes are taken as independent, so by inclusion-exclusion
+        // P(A or B or ...) = 1 - (1 - P(A)) * (1 - P(B)) * ...
+        double noneSelected = 1.0;
+        for (Map.Entry<Attribute, Set<String>> entry : valuesByAttr.entrySet()) {
+            int valueCount = inputRelation.getAttribute(entry.getKey()).getValueCount();
+            noneSelected *= 1.0 - (double) Math.min(entry.getValue().size(), valueCount) / valueCount;
+        }
+        for (Predicate disjunct : attrPredicates) {
+            int maxAttrValues = Math.max(inputRelation.getAttribute(disjunct.getLeftAttribute()).getValueCount(),
+                    inputRelation.getAttribute(disjunct.getRightAttribute()).getValueCount());
+            noneSelected *= 1.0 - 1.0 / maxAttrValues;
+        }
+
+        int estimatedTuples = (int) Math.round(inputRelation.getTupleCount() * (1.0 - noneSelected));
+        Relation outputRelation = new Relation(estimatedTuples);
+
+        // If all the terms compare one attribute with values, that attribute can only take those values
+        boolean isSingleAttr = valuesByAttr.size() == 1 && attrPredicates.isEmpty();
+        inputRelation.getAttributes()
+                .forEach(attr -> {
+                    int valueCount = isSingleAttr && valuesByAttr.containsKey(attr)
+                            ? Math.min(valuesByAttr.get(attr).size(), attr.getValueCount()) : attr.getValueCount();
+                    outputRelation.addAttribute(new Attribute(attr, valueCount));
+                });
+        return outputRelation;
+    }
+
     public void visit(Product op) {
         Relation leftRelation = op.getLeft().getOutput();
         Relation rightRelation = op.getRight().getOutput();
@@ -80,9 +160,9 @@ public class Estimator implements PlanVisitor {
         Relation outputRelation = new Relation(estimatedTuples);
 
         leftRelation.getAttributes()
-                .forEach(attr -> outputRelation.addAttribute(new Attribute(attr.getName(), attr.getValueCount())));
+                .forEach(attr -> outputRelation.addAttribute(new Attribute(attr)));
         rightRelation.getAttributes()
-                .forEach(attr -> outputRelation.addAttribute(new Attribute(attr.getName(), attr.getValueCount())));
+                .forEach(attr -> outputRelation.addAttribute(new Attribute(attr)));
 
         op.setOutput(outputRelation);
     }
@@ -96,7 +176,7 @@ public class Estimator implements PlanVisitor {
         Attribute rightAttribute;
         // for the Join predicate, the leftAttribute is not always in the leftRelation  (it could be rightRelation),
         // so, the judgement is required
-        if (leftRelation.getAttributes().contains(predicate.getLeftAttribute())) {
+        if (leftRelation.hasAttribute(predicate.getLeftAttribute())) {
             leftAttribute = leftRelation.getAttribute(predicate.getLeftAttribute());
             rightAttribute = rightRelation.getAttribute(predicate.getRightAttribute());
         } else {
@@ -104,26 +184,145 @@ public class Estimator implements PlanVisitor {
             rightAttribute = leftRelation.getAttribute(predicate.getRightAttribute());
         }
 
-        int maxAttrValues = Math.max(leftAttribute.getValueCount(), rightAttribute.getValueCount());
-        int estimatedTuples = (leftRelation.getTupleCount() * rightRelation.getTupleCount()) / maxAttrValues;
+        int estimatedTuples;
+        if (isForeignKey(leftAttribute, rightAttribute)) {
+            estimatedTuples = estimateForeignKeyJoin(leftRelation, rightRelation, leftAttribute);
+        } else if (isForeignKey(rightAttribute, leftAttribute)) {
+            estimatedTuples = estimateForeignKeyJoin(rightRelation, leftRelation, rightAttribute);
+        } else {
+            int maxAttrValues = Math.max(leftAttribute.getValueCount(), rightAttribute.getValueCount());
+            estimatedTuples = (leftRelation.getTupleCount() * rightRelation.getTupleCount()) / maxAttrValues;
+        }
         Relation outputRelation = new Relation(estimatedTuples);
 
         int minAttrValues = Math.min(leftAttribute.getValueCount(), rightAttribute.getValueCount());
         leftRelation.getAttributes().forEach(attr -> {
-            int valueCount = isSameAttr(leftAttribute.getName(), attr) || isSameAttr(rightAttribute.getName(), attr)
+            int valueCount = isSameAttr(leftAttribute, attr) || isSameAttr(rightAttribute, attr)
                     ? minAttrValues : attr.getValueCount();
-            outputRelation.addAttribute(new Attribute(attr.getName(), valueCount));
+            outputRelation.addAttribute(new Attribute(attr, valueCount));
         });
         rightRelation.getAttributes().forEach(attr -> {
-            int valueCount = isSameAttr(leftAttribute.getName(), attr) || isSameAttr(rightAttribute.getName(), attr)
+            int valueCount = isSameAttr(leftAttribute, attr) || isSameAttr(rightAttribute, attr)
                     ? minAttrValues : attr.getValueCount();
-            outputRelation.addAttribute(new Attribute(attr.getName(), valueCount));
+            outputRelation.addAttribute(new Attribute(attr, valueCount));
         });
 
         op.setOutput(outputRelation);
     }
 
-    private static boolean isSameAttr(String attrName, Attribute attr) {
-        return attr.getName().equals(attrName);
+    public void visit(SemiJoin op) {
+        Relation leftRelation = op.getLeft().getOutput();
+        Relation rightRelation = op.getRight().getOutput();
+        Predicate predicate = op.getPredicate();
+
+        // as for Join, the leftAttribute of the predicate may belong to either input
+        Attribute leftAttribute;
+        Attribute rightAttribute;
+        if (leftRelation.hasAttribute(predicate.getLeftAttribute())) {
+            leftAttribute = leftRelation.getAttribute(predicate.getLeftAttribute());
+            rightAttribute = rightRelation.getAttribute(predicate.getRightAttribute());
+        } else {
+            leftAttribute = leftRelation.getAttribute(predicate.getRightAttribute());
+            rightAttribute = rightRelation.getAttribute(predicate.getLeftAttribute());
+        }
+
+        // Only the distinct right values matter: a left tuple is kept (once) if its value is among them,
+        // so the output can never be larger than the left input
+        int matchingValues = Math.min(leftAttribute.getValueCount(), rightAttribute.getValueCount());
+        int estimatedTuples = (leftRelation.getTupleCount() * matchingValues) / leftAttribute.getValueCount();
+        Relation outputRelation = new Relation(estimatedTuples);
+
+        leftRelation.getAttributes().forEach(attr -> {
+            int valueCount = isSameAttr(leftAttribute, attr) ? matchingValues : attr.getValueCount();
+            outputRelation.addAttribute(new Attribute(attr, valueCount));
+        });
+
+        op.setOutput(outputRelation);
+    }
+
+    public void visit(Aggregate op) {
+        Relation inputRelation = op.getInput().getOutput();
+
+        // One tuple per combination of grouping values, but never more groups than input tuples.
+        // Without grouping attributes, the whole input is a single group.
+        long groups = 1;
+        for (Attribute attr : op.getGroupingAttributes()) {
+            groups = Math.min(groups * inputRelation.getAttribute(attr).getValueCount(), inputRelation.getTupleCount());
+        }
+        int estimatedTuples = op.getGroupingAttributes().isEmpty() ? 1 : (int) groups;
+        Relation outputRelation = new Relation(estimatedTuples);
+
+        op.getGroupingAttributes()
+                .forEach(attr -> outputRelation.addAttribute(new Attribute(inputRelation.getAttribute(attr))));
+        op.getFunctions().forEach(function -> {
+            // MIN and MAX return values of the aggregated attribute, the others may give a new value per group
+            boolean isExtreme = function.getFunction() == AggregateFunction.Function.MIN
+                    || function.getFunction() == AggregateFunction.Function.MAX;
+            int valueCount = isExtreme ? inputRelation.getAttribute(function.getAttribute()).getValueCount() : estimatedTuples;
+            outputRelation.addAttribute(new Attribute(function.getOutputAttribute().getName(), valueCount));
+        });
+
+        op.setOutput(outputRelation);
+    }
+
+    public void visit(TopK op) {
+        Relation inputRelation = op.getInput().getOutput();
+
+        // At most limit tuples are output, the distinct values are capped by addAttribute()
+        int estimatedTuples = op.getLimit() == TopK.UNLIMITED
+                ? inputRelation.getTupleCount() : Math.min(op.getLimit(), inputRelation.getTupleCount());
+        Relation outputRelation = new Relation(estimatedTuples);
+
+        inputRelation.getAttributes()
+                .forEach(attr -> outputRelation.addAttribute(new Attribute(attr)));
+
+        op.setOutput(outputRelation);
+    }
+
+    public void visit(MultiwayJoin op) {
+        // The result is the same as that of the binary joins it replaces, so each predicate
+        // is applied in turn to the product of the inputs, as a Select over it would be
+        double estimatedTuples = 1;
+        Map<Attribute, Integer> valueCounts = new LinkedHashMap<>();
+        for (Operator input : op.getInputs()) {
+            estimatedTuples *= input.getOutput().getTupleCount();
+            input.getOutput().getAttributes().forEach(attr -> valueCounts.put(attr, attr.getValueCount()));
+        }
+        for (Predicate predicate : op.getPredicates()) {
+            int leftValues = valueCounts.get(predicate.getLeftAttribute());
+            int rightValues = valueCounts.get(predicate.getRightAttribute());
+            estimatedTuples /= Math.max(leftValues, rightValues);
+            valueCounts.put(predicate.getLeftAttribute(), Math.min(leftValues, rightValues));
+            valueCounts.put(predicate.getRightAttribute(), Math.min(leftValues, rightValues));
+        }
+        Relation outputRelation = new Relation((int) estimatedTuples);
+
+        valueCounts.forEach((attr, valueCount) -> outputRelation.addAttribute(new Attribute(attr, valueCount)));
+
+        op.setOutput(outputRelation);
+    }
+
+    // Return true if a foreign key is declared from fkAttr to keyAttr. The attributes may be qualified by aliases,
+    // so keyAttr is matched by name, and by its relation if that is known.
+    private boolean isForeignKey(Attribute fkAttr, Attribute keyAttr) {
+        if (catalogue == null) {
+            return false;
+        }
+        ForeignKey foreignKey = catalogue.getForeignKey(fkAttr);
+        return foreignKey != null && foreignKey.getReferencedAttribute().getName().equals(keyAttr.getName())
+                && (keyAttr.getRelation() == null
+                    || keyAttr.getRelation().equals(foreignKey.getReferencedRelation().toString()));
+    }
+
+    // Every referencing tuple matches exactly one tuple of the referenced relation,
+    // so the result is the referencing side scaled by the fraction of the referenced relation that is left.
+    // The fraction can be tiny, so round up rather than estimate an empty result for non-empty inputs.
+    private int estimateForeignKeyJoin(Relation referencing, Relation referenced, Attribute fkAttr) {
+        int referencedTuples = catalogue.getForeignKey(fkAttr).getReferencedRelation().getTupleCount();
+        return (int) Math.ceil((double) referencing.getTupleCount() * referenced.getTupleCount() / referencedTuples);
+    }
+
+    private static boolean isSameAttr(Attribute other, Attribute attr) {
+        return attr.equals(other);
     }
 }
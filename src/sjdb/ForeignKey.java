@@ -0,0 +1,57 @@
+package sjdb;
+
+/**
+ * This class represents a foreign key declared in the system catalogue:
+ * every value of an attribute of one named relation appears exactly
+ * once as a value of a key attribute of another (referenced) relation.
+ */
+public class ForeignKey {
+	private Attribute attribute;
+	private NamedRelation referencedRelation;
+	private Attribute referencedAttribute;
+
+	/**
+	 * Create a new foreign key
+	 * @param attribute Referencing attribute
+	 * @param referencedRelation Referenced named relation
+	 * @param referencedAttribute Key attribute of the referenced relation
+	 */
+	public ForeignKey(Attribute attribute, NamedRelation referencedRelation, Attribute referencedAttribute) {
+		this.attribute = attribute;
+		this.referencedRelation = referencedRelation;
+		this.referencedAttribute = referencedAttribute;
+	}
+
+	/**
+	 * Return the referencing attribute
+	 * @return Referencing attribute
+	 */
+	public Attribute getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * Return the referenced named relation
+	 * @return Referenced relation
+	 */
+	public NamedRelation getReferencedRelation() {
+		return this.referencedRelation;
+	}
+
+	/**
+	 * Return the key attribute of the referenced relation
+	 * @return Referenced attribute
+	 */
+	public Attribute getReferencedAttribute() {
+		return this.referencedAttribute;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.attribute.toString() + "->" + this.referencedRelation.toString() + "."
+				+ this.referencedAttribute.toString();
+	}
+}
@@ -0,0 +1,55 @@
+package sjdb;
+
+/**
+ * This class represents a secondary index declared in the system
+ * catalogue on a single attribute of a named relation.
+ *
+ * Like the other catalogue entries, an index carries no data; it only
+ * records that an access path other than a full scan is available, so
+ * that the optimiser can choose to use it.
+ */
+public class Index {
+	/**
+	 * The kind of index structure.
+	 */
+	public enum Type {
+		BTREE, HASH
+	}
+
+	private Attribute attribute;
+	private Type type;
+
+	/**
+	 * Create a new index on the given attribute
+	 * @param attribute Indexed attribute
+	 * @param type Kind of index structure
+	 */
+	public Index(Attribute attribute, Type type) {
+		this.attribute = attribute;
+		this.type = type;
+	}
+
+	/**
+	 * Return the attribute covered by this index
+	 * @return Indexed attribute
+	 */
+	public Attribute getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * Return the kind of index structure
+	 * @return Index type
+	 */
+	public Type getType() {
+		return this.type;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.type + "(" + this.attribute.toString() + ")";
+	}
+}
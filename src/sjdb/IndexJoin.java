@@ -0,0 +1,43 @@
+package sjdb;
+
+/**
+ * This class represents an index nested-loop join: for each tuple of
+ * the left (outer) child, matching tuples of the right (inner) child
+ * are looked up through an index on the inner join attribute.
+ *
+ * The result is the same as that of a Join with the same predicate,
+ * so it is estimated and visited as one.
+ */
+public class IndexJoin extends Join {
+	private Index index;
+
+	/**
+	 * Create a new index nested-loop join operator.
+	 * @param left Outer child operator
+	 * @param right Inner child operator, over the indexed relation
+	 * @param predicate Join predicate
+	 * @param index Index on the inner join attribute
+	 */
+	public IndexJoin(Operator left, Operator right, Predicate predicate, Index index) {
+		super(left, right, predicate);
+		this.index = index;
+	}
+
+	/**
+	 * Return the index probed on the inner side
+	 * @return Index
+	 */
+	public Index getIndex() {
+		return this.index;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Join#toString()
+	 */
+	@Override
+	public String toString() {
+		return "(" + this.getLeft().toString() + ") INDEXJOIN " + this.index.getType() + " [" +
+				this.getPredicate().toString() +
+				"] (" + this.getRight().toString() + ")";
+	}
+}
@@ -0,0 +1,77 @@
+package sjdb;
+
+/**
+ * This class implements an index scan, which feeds the tuples of a
+ * NamedRelation that satisfy a predicate of the form attr=value or
+ * attr IN (value, ...) into a query plan by looking them up in an index
+ * on attr (once for each value of an IN list), rather than by scanning
+ * the whole relation and selecting from it.
+ */
+public class IndexScan extends Scan {
+	/**
+	 * The index used for the lookup
+	 */
+	private Index index;
+	/**
+	 * The predicate of the form attr=value or attr IN (value, ...)
+	 * answered by the lookup
+	 */
+	private Predicate predicate;
+
+	/**
+	 * Create a new index scan of a given named relation
+	 * @param relation Named relation to be scanned
+	 * @param index Index on the predicate's attribute
+	 * @param predicate Predicate of the form attr=value or attr IN (value, ...)
+	 */
+	public IndexScan(NamedRelation relation, Index index, Predicate predicate) {
+		this(relation, null, index, predicate);
+	}
+
+	/**
+	 * Create a new index scan of a given named relation, whose attributes
+	 * are qualified by an alias
+	 * @param relation Named relation to be scanned
+	 * @param alias Qualifier of the output attributes, or null for none
+	 * @param index Index on the predicate's attribute
+	 * @param predicate Predicate of the form attr=value or attr IN (value, ...)
+	 */
+	public IndexScan(NamedRelation relation, String alias, Index index, Predicate predicate) {
+		super(relation, alias);
+		this.index = index;
+		this.predicate = predicate;
+	}
+
+	/**
+	 * Return the index used for the lookup
+	 * @return Index
+	 */
+	public Index getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Return the predicate answered by the lookup
+	 * @return Predicate of the form attr=value or attr IN (value, ...)
+	 */
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Scan#toString()
+	 */
+	@Override
+	public String toString() {
+		return "INDEXSCAN " + this.index.getType() + " [" + this.predicate.toString() + "] ("
+				+ super.toString() + ")";
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Scan#accept(sjdb.PlanVisitor)
+	 */
+	@Override
+	public void accept(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+}
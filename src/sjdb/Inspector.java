@@ -1,50 +1,99 @@
 package sjdb;
 
+import java.io.PrintStream;
+
 public class Inspector implements PlanVisitor {
+	private PrintStream out;
 
 	public Inspector() {
-		// TODO Auto-generated constructor stub
+		this(System.out);
+	}
+
+	/**
+	 * Create an inspector that prints to the given stream
+	 * @param out Stream to print the plan to
+	 */
+	public Inspector(PrintStream out) {
+		this.out = out;
 	}
 
 	@Override
 	public void visit(Scan op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  in:  " + op.getRelation().render());
-		System.out.println("  out: " + op.getOutput().render());
+		this.out.println(op.toString());
+		this.out.println("  in:  " + op.getRelation().render());
+		this.out.println("  out: " + op.getOutput().render());
 	}
 
 	@Override
 	public void visit(Project op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  in:  " + op.getInput().getOutput().render());
-		System.out.println("  out: " + op.getOutput().render());
+		this.out.println(op.toString());
+		this.out.println("  in:  " + op.getInput().getOutput().render());
+		this.out.println("  out: " + op.getOutput().render());
 	}
 
 	@Override
 	public void visit(Select op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  in:  " + op.getInput().getOutput().render());
-		System.out.println("  out: " + op.getOutput().render());
+		this.out.println(op.toString());
+		this.out.println("  in:  " + op.getInput().getOutput().render());
+		this.out.println("  out: " + op.getOutput().render());
 	}
 
 	@Override
 	public void visit(Product op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  inl: " + op.getLeft().getOutput().render());
-		System.out.println("  inr: " + op.getRight().getOutput().render());
-		System.out.println("  out: " + op.getOutput().render());
+		this.out.println(op.toString());
+		this.out.println("  inl: " + op.getLeft().getOutput().render());
+		this.out.println("  inr: " + op.getRight().getOutput().render());
+		this.out.println("  out: " + op.getOutput().render());
 	}
 
 	@Override
 	public void visit(Join op) {
 		// TODO Auto-generated method stub
-		System.out.println(op.toString());
-		System.out.println("  inl: " + op.getLeft().getOutput().render());
-		System.out.println("  inr: " + op.getRight().getOutput().render());
-		System.out.println("  out: " + op.getOutput().render());
+		this.out.println(op.toString());
+		this.out.println("  inl: " + op.getLeft().getOutput().render());
+		this.out.println("  inr: " + op.getRight().getOutput().render());
+		this.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(IndexScan op) {
+		this.out.println(op.toString());
+		this.out.println("  in:  " + op.getRelation().render());
+		this.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(SemiJoin op) {
+		this.out.println(op.toString());
+		this.out.println("  inl: " + op.getLeft().getOutput().render());
+		this.out.println("  inr: " + op.getRight().getOutput().render());
+		this.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(Aggregate op) {
+		this.out.println(op.toString());
+		this.out.println("  in:  " + op.getInput().getOutput().render());
+		this.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(TopK op) {
+		this.out.println(op.toString());
+		this.out.println("  in:  " + op.getInput().getOutput().render());
+		this.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(MultiwayJoin op) {
+		this.out.println(op.toString());
+		for (Operator input : op.getInputs()) {
+			this.out.println("  in:  " + input.getOutput().render());
+		}
+		this.out.println("  out: " + op.getOutput().render());
 	}
 }
@@ -0,0 +1,130 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents a materialized view declared in the system
+ * catalogue: the stored result of a select-project-join query, which
+ * can be scanned as a NamedRelation in place of the query.
+ *
+ * The definition is kept as the canonical plan built by QueryParser,
+ * from which the scans of the relations it joins and its predicates are
+ * taken. A relation may be scanned more than once, under different
+ * aliases, so the relation names are kept as a sorted list.
+ */
+public class MaterializedView {
+	private NamedRelation relation;
+	private Operator definition;
+	private List<Scan> scans;
+	private List<String> relationNames;
+	private List<Predicate> predicates;
+	private String query;
+
+	/**
+	 * Create a new materialized view
+	 * @param relation Named relation holding the result, with its statistics
+	 * @param definition Canonical plan of the view query
+	 * @throws DatabaseException If the plan is not a select-project-join query
+	 */
+	public MaterializedView(NamedRelation relation, Operator definition) throws DatabaseException {
+		this.relation = relation;
+		this.definition = definition;
+		this.scans = new ArrayList<Scan>();
+		this.relationNames = new ArrayList<String>();
+		this.predicates = new ArrayList<Predicate>();
+
+		Operator op = definition;
+		if (op instanceof Project) {
+			op = ((Project) op).getInput();
+		}
+		collect(op);
+		Collections.sort(this.relationNames);
+	}
+
+	/**
+	 * Create a new materialized view, recording the text of its query
+	 * @param relation Named relation holding the result, with its statistics
+	 * @param definition Canonical plan of the view query
+	 * @param query Text of the view query
+	 * @throws DatabaseException If the plan is not a select-project-join query
+	 */
+	public MaterializedView(NamedRelation relation, Operator definition, String query) throws DatabaseException {
+		this(relation, definition);
+		this.query = query;
+	}
+
+	private void collect(Operator op) throws DatabaseException {
+		if (op instanceof Select) {
+			collect(((Select) op).getInput());
+			this.predicates.add(((Select) op).getPredicate());
+		} else if (op instanceof Product) {
+			collect(((Product) op).getLeft());
+			collect(((Product) op).getRight());
+		} else if (op instanceof Scan) {
+			this.scans.add((Scan) op);
+			this.relationNames.add(((Scan) op).getRelation().toString());
+		} else {
+			throw new DatabaseException("View " + this.relation + " is not a select-project-join query");
+		}
+	}
+
+	/**
+	 * Return the named relation holding the result of the view
+	 * @return Named relation
+	 */
+	public NamedRelation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * Return the canonical plan of the view query
+	 * @return Plan
+	 */
+	public Operator getDefinition() {
+		return this.definition;
+	}
+
+	/**
+	 * Return the text of the view query, or null if the view was
+	 * registered from a plan
+	 * @return Query text
+	 */
+	public String getQuery() {
+		return this.query;
+	}
+
+	/**
+	 * Return the names of the relations joined by the view, sorted, and
+	 * with a name repeated for each time the relation is scanned
+	 * @return Relation names
+	 */
+	public List<String> getRelationNames() {
+		return new ArrayList<String>(this.relationNames);
+	}
+
+	/**
+	 * Return the scans of the relations joined by the view
+	 * @return Scans
+	 */
+	public List<Scan> getScans() {
+		return new ArrayList<Scan>(this.scans);
+	}
+
+	/**
+	 * Return the predicates of the view query
+	 * @return Predicates
+	 */
+	public List<Predicate> getPredicates() {
+		return new ArrayList<Predicate>(this.predicates);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.relation.toString() + "=" + this.definition.toString();
+	}
+}
@@ -0,0 +1,56 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This class represents a worst-case optimal multiway join (Generic
+ * Join) of several child operators under a set of join predicates.
+ *
+ * Rather than joining two inputs at a time, the join attributes are
+ * bound one at a time: the values of the next attribute are found by
+ * intersecting the sorted values of every input that contains it,
+ * given the values already bound. No intermediate result is larger
+ * than the final one allows, which matters for cyclic queries, where
+ * any sequence of binary joins may build a much larger intermediate.
+ */
+public class MultiwayJoin extends Operator {
+	private List<Predicate> predicates;
+
+	/**
+	 * Create a new multiway join operator.
+	 * @param inputs Child operators, in the order their attributes are output
+	 * @param predicates Join predicates of the form attr=attr
+	 */
+	public MultiwayJoin(List<Operator> inputs, List<Predicate> predicates) {
+		super();
+		this.inputs.addAll(inputs);
+		this.predicates = new ArrayList<Predicate>(predicates);
+	}
+
+	/**
+	 * Return the join predicates
+	 * @return Join predicates
+	 */
+	public List<Predicate> getPredicates() {
+		return new ArrayList<Predicate>(this.predicates);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#accept(sjdb.PlanVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String predicates = this.predicates.stream().map(Predicate::toString).collect(Collectors.joining(","));
+		String inputs = this.inputs.stream().map(input -> "(" + input.toString() + ")").collect(Collectors.joining(", "));
+		return "MULTIJOIN [" + predicates + "] (" + inputs + ")";
+	}
+}
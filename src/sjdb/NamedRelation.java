@@ -3,6 +3,9 @@
  */
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This class represents a named relation which is fed into a query plan
  * @author nmg
@@ -12,6 +15,14 @@ public class NamedRelation extends Relation {
 	 * The name of the named relation
 	 */
 	private String name;
+	/**
+	 * The secondary indexes declared on this relation
+	 */
+	private List<Index> indexes;
+	/**
+	 * The attributes declared as keys of this relation
+	 */
+	private List<Attribute> keys;
 	
 	/**
 	 * Create a new named relation with a given name and tuple count
@@ -21,6 +32,76 @@ public class NamedRelation extends Relation {
 	public NamedRelation(String name, int size) {
 		super(size);
 		this.name = name;
+		this.indexes = new ArrayList<Index>();
+		this.keys = new ArrayList<Attribute>();
+	}
+
+	/**
+	 * Add a secondary index to this relation
+	 * @param index the index to add
+	 */
+	public void addIndex(Index index) {
+		this.indexes.add(index);
+	}
+
+	/**
+	 * Return the secondary indexes declared on this relation
+	 * @return the indexes
+	 */
+	public List<Index> getIndexes() {
+		return indexes;
+	}
+
+	/**
+	 * Return an index on the given attribute, or null if the attribute
+	 * is not indexed. If there is more than one, a hash index is
+	 * preferred, since only equality lookups are ever made. The attribute
+	 * is matched by name, so it may be qualified by an alias of this relation.
+	 * 
+	 * @param attribute the attribute to look up
+	 * @return the index, or null
+	 */
+	public Index getIndex(Attribute attribute) {
+		Index found = null;
+		for (Index index : this.indexes) {
+			if (index.getAttribute().getName().equals(attribute.getName())
+					&& (found == null || index.getType() == Index.Type.HASH)) {
+				found = index;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Declare an attribute of this relation as a key, that is, one whose
+	 * value is different in every tuple
+	 * @param attribute the key attribute
+	 */
+	public void addKey(Attribute attribute) {
+		this.keys.add(attribute);
+	}
+
+	/**
+	 * Return the attributes declared as keys of this relation
+	 * @return the key attributes
+	 */
+	public List<Attribute> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * Return true if the given attribute is declared as a key of this
+	 * relation; as for getIndex(), the attribute is matched by name
+	 * @param attribute the attribute to look up
+	 * @return
+	 */
+	public boolean isKey(Attribute attribute) {
+		for (Attribute key : this.keys) {
+			if (key.getName().equals(attribute.getName())) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/* (non-Javadoc)
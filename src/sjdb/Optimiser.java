@@ -1,26 +1,243 @@
 package sjdb;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class Optimiser {
+    // An index lookup costs a random access per matching tuple, so it is only
+    // chosen over a full Scan when at most this fraction of the relation matches
+    private static final double INDEX_SELECTIVITY_THRESHOLD = 0.1;
+
     private Catalogue catalogue;
+    private Estimator estimator;
 
     public Optimiser(Catalogue catalogue) {
         this.catalogue = catalogue;
+        this.estimator = new Estimator(catalogue);
     }
 
     // using the Heuristics method
     // comments were added at crucial points in the code to help understanding
     public Operator optimise(Operator plan) {
+        plan = useMaterializedViews(plan, null);
         plan = transformToLeftDeepTree(plan);
         plan = pushdownSelections(plan);
+        plan = chooseAccessPaths(plan);
         plan = combineToJoin(plan);
+        plan = chooseMultiwayJoins(plan);
+        plan = chooseJoinMethods(plan);
+        plan = pushdownAggregations(plan);
+        plan = pushdownLimits(plan);
         plan = pushdownProjects(plan);
         return plan;
     }
 
+    // Read the select-project-join part of the canonical plan from a materialized view, if one matches.
+    // requiredAttributes are the attributes used by the operators above it, or null if every attribute
+    // is output (there is no Project above it).
+    private Operator useMaterializedViews(Operator plan, Set<Attribute> requiredAttributes) {
+        if (plan instanceof Project) {
+            Set<Attribute> attributes = new HashSet<>(((Project) plan).getAttributes());
+            return new Project(useMaterializedViews(((Project) plan).getInput(), attributes), ((Project) plan).getAttributes());
+        } else if (plan instanceof TopK) {
+            Set<Attribute> attributes = requiredAttributes == null ? null : new HashSet<>(requiredAttributes);
+            if (attributes != null) {
+                attributes.addAll(((TopK) plan).getOrderAttributes());
+            }
+            return copyTopK((TopK) plan, useMaterializedViews(((TopK) plan).getInput(), attributes));
+        } else if (plan instanceof Aggregate) {
+            Aggregate aggregate = (Aggregate) plan;
+            Set<Attribute> attributes = new HashSet<>(aggregate.getGroupingAttributes());
+            aggregate.getFunctions().stream()
+                    .filter(function -> function.getAttribute() != null)
+                    .forEach(function -> attributes.add(function.getAttribute()));
+            return new Aggregate(useMaterializedViews(aggregate.getInput(), attributes),
+                    aggregate.getGroupingAttributes(), aggregate.getFunctions());
+        }
+
+        // The rest of the canonical plan is a tree of Selects over a Product of Scans
+        List<Scan> scans = new ArrayList<>();
+        List<Predicate> predicates = new ArrayList<>();
+        if (!collectSelectProductJoin(plan, scans, predicates)) {
+            return plan;
+        }
+        if (requiredAttributes == null && !catalogue.getViews().isEmpty()) {
+            // Without a Project, the view must hold every attribute of the relations
+            plan.accept(estimator);
+            requiredAttributes = new HashSet<>(plan.getOutput().getAttributes());
+        }
+        for (MaterializedView view : catalogue.getViews()) {
+            Operator rewritten = rewriteWithView(view, scans, predicates, requiredAttributes);
+            if (rewritten != null) {
+                return rewritten;
+            }
+        }
+        return plan;
+    }
+
+    private boolean collectSelectProductJoin(Operator plan, List<Scan> scans, List<Predicate> predicates) {
+        if (plan instanceof Select) {
+            predicates.add(0, ((Select) plan).getPredicate());
+            return collectSelectProductJoin(((Select) plan).getInput(), scans, predicates);
+        } else if (plan instanceof Product) {
+            return collectSelectProductJoin(((Product) plan).getLeft(), scans, predicates)
+                    && collectSelectProductJoin(((Product) plan).getRight(), scans, predicates);
+        } else if (plan instanceof Scan && !(plan instanceof IndexScan)) {
+            scans.add((Scan) plan);
+            return true;
+        }
+        return false;
+    }
+
+    // Return a Scan of the view, under the query predicates the view does not apply itself,
+    // or null if the view does not contain every tuple and attribute the query needs
+    private Operator rewriteWithView(MaterializedView view, List<Scan> scans, List<Predicate> predicates,
+                                     Set<Attribute> requiredAttributes) {
+        // The view must scan the same relations, each the same number of times
+        List<String> relationNames = new ArrayList<>();
+        scans.forEach(scan -> relationNames.add(scan.getRelation().toString()));
+        Collections.sort(relationNames);
+        if (!relationNames.equals(view.getRelationNames())) {
+            return null;
+        }
+        return pairScans(view, scans, 0, new HashMap<>(), new HashMap<>(), new boolean[scans.size()], predicates,
+                requiredAttributes);
+    }
+
+    // The query and the view may give their relations different aliases, so try each way of pairing the query
+    // Scans with the view Scans of the same relations, naming the query attributes as the paired view Scans do.
+    // qualifiers maps the qualifier of each query Scan to the alias of its view Scan, and aliases the other way
+    private Operator pairScans(MaterializedView view, List<Scan> scans, int i, Map<String, String> qualifiers,
+                               Map<String, String> aliases, boolean[] isPaired, List<Predicate> predicates,
+                               Set<Attribute> requiredAttributes) {
+        if (i == scans.size()) {
+            List<Predicate> renamed = new ArrayList<>();
+            predicates.forEach(predicate -> renamed.add(renamePredicate(predicate, qualifiers)));
+            Set<Attribute> renamedAttributes = new HashSet<>();
+            requiredAttributes.forEach(attr -> renamedAttributes.add(renameAttribute(attr, qualifiers)));
+            return rewriteWithView(view, renamed, predicates, renamedAttributes, aliases);
+        }
+        List<Scan> viewScans = view.getScans();
+        for (int j = 0; j < viewScans.size(); j++) {
+            if (!isPaired[j] && viewScans.get(j).getRelation() == scans.get(i).getRelation()) {
+                isPaired[j] = true;
+                qualifiers.put(getQualifier(scans.get(i)), viewScans.get(j).getAlias());
+                aliases.put(getQualifier(viewScans.get(j)), scans.get(i).getAlias());
+                Operator rewritten = pairScans(view, scans, i + 1, qualifiers, aliases, isPaired, predicates,
+                        requiredAttributes);
+                isPaired[j] = false;
+                if (rewritten != null) {
+                    return rewritten;
+                }
+            }
+        }
+        return null;
+    }
+
+    // A Scan is told apart from the others in a query by its alias, or else by its relation name
+    private static String getQualifier(Scan scan) {
+        return scan.getAlias() != null ? scan.getAlias() : scan.getRelation().toString();
+    }
+
+    private static Attribute renameAttribute(Attribute attr, Map<String, String> qualifiers) {
+        String key = attr.getQualifier() != null ? attr.getQualifier() : attr.getRelation();
+        return key == null || !qualifiers.containsKey(key) ? attr : new Attribute(attr, qualifiers.get(key));
+    }
+
+    private static Predicate renamePredicate(Predicate predicate, Map<String, String> qualifiers) {
+        if (predicate.isDisjunction()) {
+            List<Predicate> disjuncts = new ArrayList<>();
+            predicate.getDisjuncts().forEach(disjunct -> disjuncts.add(renamePredicate(disjunct, qualifiers)));
+            return new Predicate(disjuncts);
+        }
+        Attribute left = renameAttribute(predicate.getLeftAttribute(), qualifiers);
+        if (predicate.equalsAttribute()) {
+            return new Predicate(left, renameAttribute(predicate.getRightAttribute(), qualifiers));
+        }
+        return predicate.isInList() ? new Predicate(left, predicate.getRightValues()) : new Predicate(left, predicate.getRightValue());
+    }
+
+    // As above, once the query predicates and requiredAttributes are named as in the view. The view is matched
+    // with the renamed predicates, but the Scan of the view outputs its attributes named as the query names them,
+    // through the aliases of the query Scans, so that the residual queryPredicates and the operators above apply
+    private Operator rewriteWithView(MaterializedView view, List<Predicate> predicates, List<Predicate> queryPredicates,
+                                     Set<Attribute> requiredAttributes, Map<String, String> aliases) {
+        NamedRelation viewRelation = view.getRelation();
+
+        // The view subsumes the query if every tuple the query selects passes each of the view predicates
+        for (Predicate viewPredicate : view.getPredicates()) {
+            if (predicates.stream().noneMatch(predicate -> implies(predicate, viewPredicate))) {
+                return null;
+            }
+        }
+
+        // The query predicates that the view does not apply as they are must be applied to the view
+        List<Predicate> residual = new ArrayList<>();
+        Set<Attribute> attributes = new HashSet<>(requiredAttributes);
+        for (int i = 0; i < predicates.size(); i++) {
+            Predicate predicate = predicates.get(i);
+            if (view.getPredicates().stream().noneMatch(viewPredicate -> isSamePredicate(predicate, viewPredicate))) {
+                residual.add(queryPredicates.get(i));
+                attributes.addAll(predicate.getAttributes());
+            }
+        }
+        if (!attributes.stream().allMatch(viewRelation::hasAttribute)) {
+            return null;
+        }
+
+        Operator plan = new Scan(renameViewRelation(viewRelation, aliases));
+        for (Predicate predicate : residual) {
+            plan = new Select(plan, predicate);
+        }
+        return plan;
+    }
+
+    // The relation of a view, or a copy of it with the same name and statistics whose attributes are renamed
+    // as the query names them, if the query gives its relations other aliases
+    private static NamedRelation renameViewRelation(NamedRelation viewRelation, Map<String, String> aliases) {
+        List<Attribute> renamed = new ArrayList<>();
+        viewRelation.getAttributes().forEach(attr -> renamed.add(renameAttribute(attr, aliases)));
+        if (renamed.equals(viewRelation.getAttributes())) {
+            return viewRelation;
+        }
+        NamedRelation relation = new NamedRelation(viewRelation.toString(), viewRelation.getTupleCount());
+        renamed.forEach(relation::addAttribute);
+        return relation;
+    }
+
+    // Return true if every tuple that satisfies predicate also satisfies other
+    private boolean implies(Predicate predicate, Predicate other) {
+        if (isSamePredicate(predicate, other)) {
+            return true;
+        }
+        if (other.isDisjunction()) {
+            return other.getDisjuncts().stream().anyMatch(disjunct -> implies(predicate, disjunct));
+        }
+        if (other.isInList() && !predicate.isDisjunction() && predicate.getLeftAttribute().equals(other.getLeftAttribute())) {
+            if (predicate.equalsValue()) {
+                return other.getRightValues().contains(predicate.getRightValue());
+            }
+            if (predicate.isInList()) {
+                return other.getRightValues().containsAll(predicate.getRightValues());
+            }
+        }
+        return false;
+    }
+
+    private boolean isSamePredicate(Predicate predicate, Predicate other) {
+        if (predicate.equalsAttribute() && other.equalsAttribute()) {
+            // attr=attr is symmetric
+            return new HashSet<>(predicate.getAttributes()).equals(new HashSet<>(other.getAttributes()));
+        }
+        return predicate.toString().equals(other.toString());
+    }
+
     private Operator transformToLeftDeepTree(Operator plan) {
         if (plan instanceof Product) {
             // Use recursion to ensure that the left and right subtrees are both left-deep trees
@@ -43,6 +260,11 @@ public class Optimiser {
             return new Select(transformToLeftDeepTree(((Select) plan).getInput()), ((Select) plan).getPredicate());
         } else if (plan instanceof Project) {
             return new Project(transformToLeftDeepTree(((Project) plan).getInput()), ((Project) plan).getAttributes());
+        } else if (plan instanceof Aggregate) {
+            Aggregate aggregate = (Aggregate) plan;
+            return new Aggregate(transformToLeftDeepTree(aggregate.getInput()), aggregate.getGroupingAttributes(), aggregate.getFunctions());
+        } else if (plan instanceof TopK) {
+            return copyTopK((TopK) plan, transformToLeftDeepTree(((TopK) plan).getInput()));
         }
         // For the Scan operator, just return it.
         return plan;
@@ -58,6 +280,12 @@ public class Optimiser {
             // For the Project operator, recursively process its child nodes
             Operator newInput = pushdownSelections(((UnaryOperator) plan).getInput());
             return new Project(newInput, ((Project) plan).getAttributes());
+        } else if (plan instanceof Aggregate) {
+            Operator newInput = pushdownSelections(((UnaryOperator) plan).getInput());
+            return new Aggregate(newInput, ((Aggregate) plan).getGroupingAttributes(), ((Aggregate) plan).getFunctions());
+        } else if (plan instanceof TopK) {
+            Operator newInput = pushdownSelections(((UnaryOperator) plan).getInput());
+            return copyTopK((TopK) plan, newInput);
         } else if (plan instanceof Product) {
             // For the Product operator, two child nodes need to be handled
             Operator newLeft = pushdownSelections(((BinaryOperator) plan).getLeft());
@@ -81,9 +309,17 @@ public class Optimiser {
                 Operator right = pushdownSelections(new Select(inputOperator.getRight(), predicate));
                 return new Product(inputOperator.getLeft(), right);
             }
-        } else if (input instanceof UnaryOperator) {
+        } else if (input instanceof Project || input instanceof Select) {
             // Skip the UnaryOperator and try to push the selection down
-            Operator pushed = handleSelection(predicate, ((UnaryOperator) input).getInput());
+            Operator inner = ((UnaryOperator) input).getInput();
+            Operator pushed = handleSelection(predicate, inner);
+
+            // If a disjunction across both sides could not be pushed any further, keep it above,
+            // so that it does not end up between a join predicate and its Product
+            if (predicate.isDisjunction() && input instanceof Select && pushed instanceof Select
+                    && ((Select) pushed).getPredicate() == predicate && ((Select) pushed).getInput() == inner) {
+                return new Select(input, predicate);
+            }
 
             if (input instanceof Project) {
                 return new Project(pushed, ((Project) input).getAttributes());
@@ -100,8 +336,7 @@ public class Optimiser {
             return false;
         }
         Operator left = ((BinaryOperator) operator).getLeft();
-        return containsAttribute(left, predicate.getLeftAttribute()) &&
-                (predicate.getRightAttribute() == null || containsAttribute(left, predicate.getRightAttribute()));
+        return predicate.getAttributes().stream().allMatch(attr -> containsAttribute(left, attr));
     }
 
     private boolean canBePushedToRightSubtree(Predicate predicate, Operator operator) {
@@ -109,8 +344,7 @@ public class Optimiser {
             return false;
         }
         Operator right = ((BinaryOperator) operator).getRight();
-        return containsAttribute(right, predicate.getLeftAttribute()) &&
-                (predicate.getRightAttribute() == null || containsAttribute(right, predicate.getRightAttribute()));
+        return predicate.getAttributes().stream().allMatch(attr -> containsAttribute(right, attr));
     }
 
     // Recursively determine if the operator contains the attr
@@ -120,18 +354,113 @@ public class Optimiser {
             return containsAttribute(binOp.getLeft(), attr) || containsAttribute(binOp.getRight(), attr);
         }
 
+        if (operator instanceof MultiwayJoin) {
+            return operator.getInputs().stream().anyMatch(input -> containsAttribute(input, attr));
+        }
+
+        // An Aggregate outputs its grouping attributes and the results of its functions
+        if (operator instanceof Aggregate) {
+            return ((Aggregate) operator).getAttributes().contains(attr);
+        }
+
         if (operator instanceof UnaryOperator) {
             return containsAttribute(((UnaryOperator) operator).getInput(), attr);
         }
 
-        if (operator.getOutput() != null) {
-            for (Attribute outputAttr : operator.getOutput().getAttributes()) {
-                if (outputAttr.equals(attr)) {
-                    return true;
+        return operator.getOutput() != null && operator.getOutput().hasAttribute(attr);
+    }
+
+    private Operator chooseAccessPaths(Operator plan) {
+        if (plan instanceof Select) {
+            // Take the whole chain of Selects, so that the index is chosen by selectivity
+            // rather than by the order of the predicates
+            List<Predicate> predicates = new ArrayList<>();
+            Operator input = plan;
+            while (input instanceof Select) {
+                predicates.add(0, ((Select) input).getPredicate());
+                input = ((Select) input).getInput();
+            }
+            input = chooseAccessPaths(input);
+
+            // One of the Selects pushed down onto a Scan may be answered by an index lookup instead
+            int best = -1;
+            if (input instanceof Scan && !(input instanceof IndexScan)) {
+                best = chooseIndexedPredicate((Scan) input, predicates);
+            }
+            Operator result = best < 0 ? input : createIndexScan((Scan) input, predicates.get(best));
+            for (int i = 0; i < predicates.size(); i++) {
+                if (i != best) {
+                    result = new Select(result, predicates.get(i));
                 }
             }
+            return result;
+        } else if (plan instanceof Project) {
+            Operator input = chooseAccessPaths(((UnaryOperator) plan).getInput());
+            return new Project(input, ((Project) plan).getAttributes());
+        } else if (plan instanceof Aggregate) {
+            Operator input = chooseAccessPaths(((UnaryOperator) plan).getInput());
+            return new Aggregate(input, ((Aggregate) plan).getGroupingAttributes(), ((Aggregate) plan).getFunctions());
+        } else if (plan instanceof TopK) {
+            Operator input = chooseAccessPaths(((UnaryOperator) plan).getInput());
+            return copyTopK((TopK) plan, input);
+        } else if (plan instanceof Product) {
+            Operator left = chooseAccessPaths(((BinaryOperator) plan).getLeft());
+            Operator right = chooseAccessPaths(((BinaryOperator) plan).getRight());
+            return new Product(left, right);
         }
-        return false;
+
+        // For the Scan operator, just return it.
+        return plan;
+    }
+
+    // Return the position of the predicate that is best answered by an index lookup, or -1 if the full Scan
+    // should be kept. The most selective one is chosen; on a tie, a key is preferred, then a hash index.
+    private int chooseIndexedPredicate(Scan scan, List<Predicate> predicates) {
+        int best = -1;
+        double bestSelectivity = 0;
+        for (int i = 0; i < predicates.size(); i++) {
+            double selectivity = getIndexSelectivity(scan, predicates.get(i));
+            if (selectivity < 0 || selectivity > INDEX_SELECTIVITY_THRESHOLD) {
+                continue;
+            }
+            if (best < 0 || selectivity < bestSelectivity || (selectivity == bestSelectivity
+                    && getLookupRank(scan, predicates.get(i)) > getLookupRank(scan, predicates.get(best)))) {
+                best = i;
+                bestSelectivity = selectivity;
+            }
+        }
+        return best;
+    }
+
+    // Return the fraction of the relation selected by an attr=value or attr IN (...) predicate on an indexed
+    // attribute, or -1
+    private double getIndexSelectivity(Scan scan, Predicate predicate) {
+        // An in-list is answered by one lookup per value
+        if (!predicate.equalsValue() && !predicate.isInList()) {
+            return -1;
+        }
+        if (((NamedRelation) scan.getRelation()).getIndex(predicate.getLeftAttribute()) == null) {
+            return -1;
+        }
+
+        // Use the Estimator to get the fraction of the relation selected by the predicate
+        Select fullScan = new Select(scan, predicate);
+        fullScan.accept(estimator);
+        return (double) fullScan.getOutput().getTupleCount() / scan.getOutput().getTupleCount();
+    }
+
+    private int getLookupRank(Scan scan, Predicate predicate) {
+        NamedRelation relation = (NamedRelation) scan.getRelation();
+        if (relation.isKey(predicate.getLeftAttribute())) {
+            return 2;
+        }
+        return relation.getIndex(predicate.getLeftAttribute()).getType() == Index.Type.HASH ? 1 : 0;
+    }
+
+    // Return an IndexScan answering the attr=value or attr IN (...) predicate
+    private Operator createIndexScan(Scan scan, Predicate predicate) {
+        NamedRelation relation = (NamedRelation) scan.getRelation();
+        return new IndexScan(relation, scan.getAlias(), relation.getIndex(predicate.getLeftAttribute()), predicate);
     }
 
     private Operator combineToJoin(Operator operator) {
@@ -152,6 +481,12 @@ public class Optimiser {
         } else if (operator instanceof Project) {
             Operator child = ((UnaryOperator) operator).getInput();
             return new Project(combineToJoin(child), ((Project) operator).getAttributes());
+        } else if (operator instanceof Aggregate) {
+            Operator child = ((UnaryOperator) operator).getInput();
+            return new Aggregate(combineToJoin(child), ((Aggregate) operator).getGroupingAttributes(), ((Aggregate) operator).getFunctions());
+        } else if (operator instanceof TopK) {
+            Operator child = ((UnaryOperator) operator).getInput();
+            return copyTopK((TopK) operator, combineToJoin(child));
         } else if (operator instanceof Product) {
             Operator left = combineToJoin(((BinaryOperator) operator).getLeft());
             Operator right = combineToJoin(((BinaryOperator) operator).getRight());
@@ -163,6 +498,10 @@ public class Optimiser {
     }
 
     private boolean canFormJoin(Predicate predicate, Operator leftChild, Operator rightChild) {
+        // Only predicates of the form attr=attr are join predicates
+        if (!predicate.equalsAttribute()) {
+            return false;
+        }
         boolean isReferencesLeft = isReferencesAttributes(predicate, leftChild);
         boolean isReferencesRight = isReferencesAttributes(predicate, rightChild);
         return isReferencesLeft && isReferencesRight;
@@ -174,6 +513,349 @@ public class Optimiser {
                 (predicate.getRightAttribute() != null && containsAttribute(operator, predicate.getRightAttribute()));
     }
 
+    private Operator chooseMultiwayJoins(Operator plan) {
+        // A Join, or a join predicate left above one because it closes a cycle, is the top of a join region
+        if (plan instanceof Join || (plan instanceof Select && ((Select) plan).getPredicate().equalsAttribute())) {
+            Operator multiwayJoin = createMultiwayJoin(plan);
+            if (multiwayJoin != null) {
+                return multiwayJoin;
+            }
+        }
+
+        if (plan instanceof Join) {
+            Operator left = chooseMultiwayJoins(((BinaryOperator) plan).getLeft());
+            Operator right = chooseMultiwayJoins(((BinaryOperator) plan).getRight());
+            return new Join(left, right, ((Join) plan).getPredicate());
+        } else if (plan instanceof Select) {
+            Operator input = chooseMultiwayJoins(((UnaryOperator) plan).getInput());
+            return new Select(input, ((Select) plan).getPredicate());
+        } else if (plan instanceof Project) {
+            Operator input = chooseMultiwayJoins(((UnaryOperator) plan).getInput());
+            return new Project(input, ((Project) plan).getAttributes());
+        } else if (plan instanceof Aggregate) {
+            Operator input = chooseMultiwayJoins(((UnaryOperator) plan).getInput());
+            return new Aggregate(input, ((Aggregate) plan).getGroupingAttributes(), ((Aggregate) plan).getFunctions());
+        } else if (plan instanceof TopK) {
+            Operator input = chooseMultiwayJoins(((UnaryOperator) plan).getInput());
+            return copyTopK((TopK) plan, input);
+        } else if (plan instanceof Product) {
+            Operator left = chooseMultiwayJoins(((BinaryOperator) plan).getLeft());
+            Operator right = chooseMultiwayJoins(((BinaryOperator) plan).getRight());
+            return new Product(left, right);
+        }
+
+        // For the Scan operator, just return it.
+        return plan;
+    }
+
+    // Return a MultiwayJoin replacing the join region below plan if its join graph is cyclic
+    // and the binary joins are estimated to blow up, otherwise null
+    private Operator createMultiwayJoin(Operator plan) {
+        List<Operator> operands = new ArrayList<>();
+        List<Predicate> predicates = new ArrayList<>();
+        List<Operator> intermediates = new ArrayList<>();
+        collectJoinRegion(plan, operands, predicates, intermediates);
+        if (!isCyclic(operands, predicates)) {
+            return null;
+        }
+
+        // A worst-case optimal join never produces more than the AGM bound, which for a cycle
+        // (every join attribute shared by two inputs) is the square root of the product of the inputs.
+        // The binary joins blow up if an intermediate is larger than both that bound and the final result.
+        plan.accept(estimator);
+        double bound = 1;
+        for (Operator operand : operands) {
+            bound *= Math.sqrt(operand.getOutput().getTupleCount());
+        }
+        int largestIntermediate = 0;
+        for (Operator intermediate : intermediates) {
+            largestIntermediate = Math.max(largestIntermediate, intermediate.getOutput().getTupleCount());
+        }
+        if (largestIntermediate <= Math.max(bound, plan.getOutput().getTupleCount())) {
+            return null;
+        }
+
+        List<Operator> inputs = new ArrayList<>();
+        operands.forEach(operand -> inputs.add(chooseMultiwayJoins(operand)));
+        return new MultiwayJoin(inputs, predicates);
+    }
+
+    // Split the tree of Joins, Products and join predicates below operator into the operands it joins,
+    // its join predicates and the intermediate results below the top
+    private void collectJoinRegion(Operator operator, List<Operator> operands, List<Predicate> predicates,
+                                   List<Operator> intermediates) {
+        if (operator instanceof Join || operator instanceof Product) {
+            if (operator instanceof Join) {
+                predicates.add(((Join) operator).getPredicate());
+            }
+            for (Operator input : operator.getInputs()) {
+                if (input instanceof Join || input instanceof Product || isJoinPredicateSelect(input)) {
+                    intermediates.add(input);
+                }
+                collectJoinRegion(input, operands, predicates, intermediates);
+            }
+        } else if (isJoinPredicateSelect(operator)) {
+            predicates.add(((Select) operator).getPredicate());
+            Operator input = ((Select) operator).getInput();
+            if (input instanceof Join || input instanceof Product) {
+                intermediates.add(input);
+            }
+            collectJoinRegion(input, operands, predicates, intermediates);
+        } else {
+            operands.add(operator);
+        }
+    }
+
+    // A Select of the form attr=attr above a Join or Product joins two of its operands
+    private boolean isJoinPredicateSelect(Operator operator) {
+        if (!(operator instanceof Select) || !((Select) operator).getPredicate().equalsAttribute()) {
+            return false;
+        }
+        Operator input = ((Select) operator).getInput();
+        return input instanceof Join || input instanceof Product || isJoinPredicateSelect(input);
+    }
+
+    // Return true if the predicates, as edges between the operands whose attributes they compare, form a cycle
+    private boolean isCyclic(List<Operator> operands, List<Predicate> predicates) {
+        // Union-find over the operands: an edge between two already connected operands closes a cycle
+        int[] parents = new int[operands.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        for (Predicate predicate : predicates) {
+            int left = findOperand(operands, predicate.getLeftAttribute());
+            int right = findOperand(operands, predicate.getRightAttribute());
+            if (left < 0 || right < 0 || left == right) {
+                continue;
+            }
+            int leftRoot = findRoot(parents, left);
+            int rightRoot = findRoot(parents, right);
+            if (leftRoot == rightRoot) {
+                return true;
+            }
+            parents[leftRoot] = rightRoot;
+        }
+        return false;
+    }
+
+    private int findOperand(List<Operator> operands, Attribute attr) {
+        for (int i = 0; i < operands.size(); i++) {
+            if (containsAttribute(operands.get(i), attr)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findRoot(int[] parents, int i) {
+        while (parents[i] != i) {
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private Operator chooseJoinMethods(Operator plan) {
+        if (plan instanceof Join) {
+            Predicate predicate = ((Join) plan).getPredicate();
+            Operator left = chooseJoinMethods(((BinaryOperator) plan).getLeft());
+            Operator right = chooseJoinMethods(((BinaryOperator) plan).getRight());
+
+            // If the inner (right) side can be probed through an index, use an index nested-loop join
+            Index index = findInnerIndex(predicate, left, right);
+            if (index != null) {
+                return new IndexJoin(left, right, predicate, index);
+            }
+            return new Join(left, right, predicate);
+        } else if (plan instanceof MultiwayJoin) {
+            List<Operator> inputs = new ArrayList<>();
+            plan.getInputs().forEach(input -> inputs.add(chooseJoinMethods(input)));
+            return new MultiwayJoin(inputs, ((MultiwayJoin) plan).getPredicates());
+        } else if (plan instanceof Select) {
+            Operator input = chooseJoinMethods(((UnaryOperator) plan).getInput());
+            return new Select(input, ((Select) plan).getPredicate());
+        } else if (plan instanceof Project) {
+            Operator input = chooseJoinMethods(((UnaryOperator) plan).getInput());
+            return new Project(input, ((Project) plan).getAttributes());
+        } else if (plan instanceof Aggregate) {
+            Operator input = chooseJoinMethods(((UnaryOperator) plan).getInput());
+            return new Aggregate(input, ((Aggregate) plan).getGroupingAttributes(), ((Aggregate) plan).getFunctions());
+        } else if (plan instanceof TopK) {
+            Operator input = chooseJoinMethods(((UnaryOperator) plan).getInput());
+            return copyTopK((TopK) plan, input);
+        } else if (plan instanceof Product) {
+            Operator left = chooseJoinMethods(((BinaryOperator) plan).getLeft());
+            Operator right = chooseJoinMethods(((BinaryOperator) plan).getRight());
+            return new Product(left, right);
+        }
+
+        // For the Scan operator, just return it.
+        return plan;
+    }
+
+    // Return the index on the inner join attribute if an index nested-loop join pays off, otherwise null
+    private Index findInnerIndex(Predicate predicate, Operator outer, Operator inner) {
+        if (!(inner instanceof Scan) || inner instanceof IndexScan) {
+            return null;
+        }
+        Attribute innerAttr = containsAttribute(inner, predicate.getLeftAttribute())
+                ? predicate.getLeftAttribute() : predicate.getRightAttribute();
+        Index index = ((NamedRelation) ((Scan) inner).getRelation()).getIndex(innerAttr);
+        if (index == null) {
+            return null;
+        }
+
+        // One lookup is made per outer tuple, so the outer side must be smaller than the inner relation
+        outer.accept(estimator);
+        inner.accept(estimator);
+        return outer.getOutput().getTupleCount() < inner.getOutput().getTupleCount() ? index : null;
+    }
+
+    private Operator pushdownAggregations(Operator plan) {
+        if (plan instanceof Aggregate) {
+            Aggregate aggregate = (Aggregate) plan;
+            Operator input = aggregate.getInput();
+
+            // Try to compute a partial aggregate below the Join, so fewer tuples are joined
+            if (input instanceof Join) {
+                Operator eager = pushAggregationBelowJoin(aggregate, (Join) input);
+                if (eager != null) {
+                    return eager;
+                }
+            }
+            return plan;
+        } else if (plan instanceof Project) {
+            Operator input = pushdownAggregations(((UnaryOperator) plan).getInput());
+            return new Project(input, ((Project) plan).getAttributes());
+        } else if (plan instanceof TopK) {
+            Operator input = pushdownAggregations(((UnaryOperator) plan).getInput());
+            return copyTopK((TopK) plan, input);
+        }
+
+        // Aggregates are only found at the top of the plan, so nothing else needs to be visited
+        return plan;
+    }
+
+    // Return the plan with a partial aggregate on one side of the join, or null if that does not pay off
+    private Operator pushAggregationBelowJoin(Aggregate aggregate, Join join) {
+        // AVG can't be rebuilt from partial results without also counting, so it is not pushed down
+        for (AggregateFunction function : aggregate.getFunctions()) {
+            if (function.getFunction() == AggregateFunction.Function.AVG) {
+                return null;
+            }
+        }
+
+        Operator pushed = pushAggregationToSide(aggregate, join, join.getLeft());
+        if (pushed != null) {
+            return pushed;
+        }
+        // The inner side of an IndexJoin has to stay a Scan of the indexed relation
+        return join instanceof IndexJoin ? null : pushAggregationToSide(aggregate, join, join.getRight());
+    }
+
+    private Operator pushAggregationToSide(Aggregate aggregate, Join join, Operator side) {
+        // Every aggregated attribute must come from this side
+        for (AggregateFunction function : aggregate.getFunctions()) {
+            if (function.getAttribute() != null && !containsAttribute(side, function.getAttribute())) {
+                return null;
+            }
+        }
+
+        // The partial aggregate groups on this side's grouping attributes and its join attribute
+        Predicate predicate = join.getPredicate();
+        Set<Attribute> partialGroups = new LinkedHashSet<>();
+        aggregate.getGroupingAttributes().stream()
+                .filter(attr -> containsAttribute(side, attr))
+                .forEach(partialGroups::add);
+        partialGroups.add(containsAttribute(side, predicate.getLeftAttribute())
+                ? predicate.getLeftAttribute() : predicate.getRightAttribute());
+
+        // Only push down if the Estimator predicts fewer groups than tuples on this side
+        Aggregate partial = new Aggregate(side, new ArrayList<>(partialGroups), aggregate.getFunctions());
+        partial.accept(estimator);
+        if (partial.getOutput().getTupleCount() >= side.getOutput().getTupleCount()) {
+            return null;
+        }
+
+        // Above the join, the partial results are combined: counts and sums are added up, MIN and MAX are kept
+        List<AggregateFunction> finalFunctions = new ArrayList<>();
+        for (AggregateFunction function : aggregate.getFunctions()) {
+            AggregateFunction.Function combine = function.getFunction() == AggregateFunction.Function.COUNT
+                    ? AggregateFunction.Function.SUM : function.getFunction();
+            Attribute partialResult = function.getOutputAttribute();
+            finalFunctions.add(new AggregateFunction(combine, partialResult, partialResult.getName()));
+        }
+
+        // The partial aggregate may itself sit on a Join, and be pushed further down
+        Operator pushed = pushdownAggregations(partial);
+        Join newJoin;
+        if (side == join.getLeft() && join instanceof IndexJoin) {
+            newJoin = new IndexJoin(pushed, join.getRight(), predicate, ((IndexJoin) join).getIndex());
+        } else if (side == join.getLeft()) {
+            newJoin = new Join(pushed, join.getRight(), predicate);
+        } else {
+            newJoin = new Join(join.getLeft(), pushed, predicate);
+        }
+        return new Aggregate(newJoin, aggregate.getGroupingAttributes(), finalFunctions);
+    }
+
+    // Return true if aggregate only combines the partial results of an input Aggregate with the same groups
+    private boolean isCombiningSameGroups(Aggregate aggregate, Operator input) {
+        if (!(input instanceof Aggregate) || !new HashSet<>(aggregate.getGroupingAttributes())
+                .equals(new HashSet<>(((Aggregate) input).getGroupingAttributes()))) {
+            return false;
+        }
+        // Each group has a single partial tuple, for which SUM, MIN and MAX return the partial result itself
+        return aggregate.getFunctions().stream().allMatch(function ->
+                function.getFunction() != AggregateFunction.Function.COUNT
+                        && function.getFunction() != AggregateFunction.Function.AVG
+                        && function.getOutputAttribute().equals(function.getAttribute()));
+    }
+
+    // Return true if the input is, under Projects (which keep the order and number of tuples),
+    // a TopK with the same order and limit
+    private boolean isSameTopK(TopK topK, Operator input) {
+        while (input instanceof Project) {
+            input = ((Project) input).getInput();
+        }
+        return input instanceof TopK
+                && ((TopK) input).getOrderAttributes().equals(topK.getOrderAttributes())
+                && ((TopK) input).getDescending().equals(topK.getDescending())
+                && ((TopK) input).getLimit() == topK.getLimit();
+    }
+
+    private Operator pushdownLimits(Operator plan) {
+        if (plan instanceof TopK) {
+            TopK topK = (TopK) plan;
+            Operator input = topK.getInput();
+
+            // Across a join in which every left tuple matches exactly one right tuple, the first k results
+            // come from the first k left tuples, so the left input can be cut short as well
+            if (input instanceof Join && topK.getLimit() != TopK.UNLIMITED) {
+                Join join = (Join) input;
+                boolean isOrderedOnLeft = topK.getOrderAttributes().stream()
+                        .allMatch(attr -> containsAttribute(join.getLeft(), attr));
+                if (isOrderedOnLeft && isForeignKeyJoinToScan(join, join.getLeft(), join.getRight())) {
+                    Operator left = copyTopK(topK, pushdownLimits(join.getLeft()));
+                    Join newJoin = join instanceof IndexJoin
+                            ? new IndexJoin(left, join.getRight(), join.getPredicate(), ((IndexJoin) join).getIndex())
+                            : new Join(left, join.getRight(), join.getPredicate());
+                    return copyTopK(topK, newJoin);
+                }
+            }
+            return plan;
+        } else if (plan instanceof Project) {
+            Operator input = pushdownLimits(((UnaryOperator) plan).getInput());
+            return new Project(input, ((Project) plan).getAttributes());
+        }
+
+        // TopK is only found near the top of the plan, so nothing else needs to be visited
+        return plan;
+    }
+
+    private TopK copyTopK(TopK topK, Operator input) {
+        return new TopK(input, topK.getOrderAttributes(), topK.getDescending(), topK.getLimit());
+    }
+
     private Operator pushdownProjects(Operator plan) {
         if (plan instanceof Project) {
             // Get the attributes needed by the top-level Project node
@@ -195,6 +877,14 @@ public class Optimiser {
             Operator leftOp = ((BinaryOperator) operator).getLeft();
             Operator rightOp = ((BinaryOperator) operator).getRight();
 
+            // If nothing above needs an attribute of the right subtree, it only filters the left one
+            boolean isRightFilterOnly = requiredAttributes.stream().noneMatch(attr -> containsAttribute(rightOp, attr));
+
+            // If, in addition, every left tuple matches exactly one right tuple, the join can be dropped
+            if (operator instanceof Join && isRightFilterOnly && isForeignKeyJoinToScan((Join) operator, leftOp, rightOp)) {
+                return pushdownProjectsRecursive(leftOp, requiredAttributes);
+            }
+
             // For Join operator, we need to add the attributes of predicate to the requiredAttributes
             if (operator instanceof Join) {
                 requiredAttributes.add(((Join) operator).getPredicate().getLeftAttribute());
@@ -219,21 +909,72 @@ public class Optimiser {
 
             if (operator instanceof Product) {
                 return new Product(left, right);
+            } else if (operator instanceof Join && !(operator instanceof IndexJoin) && isRightFilterOnly
+                    && isUniqueAttribute(rightOp, getRightAttribute((Join) operator, rightOp))) {
+                // Use a semi-join, so the right subtree is only checked for matching keys.
+                // A left tuple is kept once, so every left tuple must match at most one right tuple.
+                return new SemiJoin(left, right, ((Join) operator).getPredicate());
+            } else if (operator instanceof IndexJoin) {
+                return new IndexJoin(left, right, ((Join) operator).getPredicate(), ((IndexJoin) operator).getIndex());
             } else if (operator instanceof Join) {
                 return new Join(left, right, ((Join) operator).getPredicate());
             }
+        } else if (operator instanceof MultiwayJoin) {
+            // As for Join, the attributes of every predicate are needed, then each input gets its share
+            ((MultiwayJoin) operator).getPredicates().forEach(predicate -> requiredAttributes.addAll(predicate.getAttributes()));
+
+            List<Operator> inputs = new ArrayList<>();
+            for (Operator inputOp : operator.getInputs()) {
+                Set<Attribute> inputRequiredAttrs = new HashSet<>();
+                requiredAttributes.stream().filter(attr -> containsAttribute(inputOp, attr)).forEach(inputRequiredAttrs::add);
+                inputs.add(new Project(pushdownProjectsRecursive(inputOp, inputRequiredAttrs), new ArrayList<>(inputRequiredAttrs)));
+            }
+            return new MultiwayJoin(inputs, ((MultiwayJoin) operator).getPredicates());
         } else if (operator instanceof Project) {
             Operator input = pushdownProjectsRecursive(((UnaryOperator) operator).getInput(), requiredAttributes);
             return new Project(input, new ArrayList<>(requiredAttributes));
+        } else if (operator instanceof Aggregate) {
+            // An Aggregate only needs its grouping attributes and the attributes it aggregates,
+            // whatever is required above it
+            Aggregate aggregate = (Aggregate) operator;
+            Set<Attribute> aggregateAttributes = new HashSet<>(aggregate.getGroupingAttributes());
+            aggregate.getFunctions().stream()
+                    .filter(function -> function.getAttribute() != null)
+                    .forEach(function -> aggregateAttributes.add(function.getAttribute()));
+
+            Operator input = pushdownProjectsRecursive(aggregate.getInput(), aggregateAttributes);
+            if (input instanceof Scan) {
+                input = pruneScanColumns((Scan) input, aggregateAttributes);
+            }
+            // If the join between a partial aggregate and this one was eliminated,
+            // the partial aggregate already gives the final result
+            if (isCombiningSameGroups(aggregate, input)) {
+                return input;
+            }
+            return new Aggregate(input, aggregate.getGroupingAttributes(), aggregate.getFunctions());
+        } else if (operator instanceof TopK) {
+            // For TopK operator, we need to add the order attributes to the requiredAttributes
+            requiredAttributes.addAll(((TopK) operator).getOrderAttributes());
+            Operator input = pushdownProjectsRecursive(((UnaryOperator) operator).getInput(), requiredAttributes);
+            if (input instanceof Scan) {
+                input = pruneScanColumns((Scan) input, requiredAttributes);
+            }
+            // If the join that pushdownLimits() copied this TopK below was eliminated,
+            // the copy already gives the result
+            if (isSameTopK((TopK) operator, input)) {
+                return input;
+            }
+            return copyTopK((TopK) operator, input);
         } else if (operator instanceof Select) {
             Predicate predicate = ((Select) operator).getPredicate();
-            requiredAttributes.add(predicate.getLeftAttribute());
 
             // For Select operator, we need to add the attributes of predicate to the requiredAttributes
-            if (predicate.getRightAttribute() != null) {
-                requiredAttributes.add(predicate.getRightAttribute());
-            }
+            requiredAttributes.addAll(predicate.getAttributes());
             Operator input = pushdownProjectsRecursive(((UnaryOperator) operator).getInput(), requiredAttributes);
+            if (input instanceof Scan) {
+                // Narrow the Scan itself, so only the needed columns are read below the Select
+                input = pruneScanColumns((Scan) input, requiredAttributes);
+            }
             return new Select(input, predicate);
         }
 
@@ -241,6 +982,53 @@ public class Optimiser {
         return operator;
     }
 
+    // Put a Project directly above the Scan if only some of its columns are required.
+    // The attributes keep the order of the scanned relation.
+    private Operator pruneScanColumns(Scan scan, Set<Attribute> requiredAttributes) {
+        List<Attribute> columns = new ArrayList<>();
+        for (Attribute attr : scan.getOutput().getAttributes()) {
+            if (requiredAttributes.contains(attr)) {
+                columns.add(attr);
+            }
+        }
+
+        if (columns.isEmpty() || columns.size() == scan.getOutput().getAttributes().size()) {
+            return scan;
+        }
+        return new Project(scan, columns);
+    }
+
+    // Return the attribute of the join predicate that belongs to the right input
+    private Attribute getRightAttribute(Join join, Operator right) {
+        Predicate predicate = join.getPredicate();
+        return containsAttribute(right, predicate.getLeftAttribute()) ? predicate.getLeftAttribute() : predicate.getRightAttribute();
+    }
+
+    // Return true if no two tuples of the operator share a value of attr: attr is a key of a Scan under
+    // Selects and Projects, which never repeat a tuple
+    private boolean isUniqueAttribute(Operator operator, Attribute attr) {
+        while (operator instanceof Select || operator instanceof Project) {
+            operator = ((UnaryOperator) operator).getInput();
+        }
+        return operator instanceof Scan && ((NamedRelation) ((Scan) operator).getRelation()).isKey(attr);
+    }
+
+    // Return true if the join predicate goes from a foreign key on the left to the key of an unfiltered right Scan
+    private boolean isForeignKeyJoinToScan(Join join, Operator left, Operator right) {
+        if (!(right instanceof Scan) || right instanceof IndexScan) {
+            return false;
+        }
+        Predicate predicate = join.getPredicate();
+        boolean isLeftFirst = containsAttribute(left, predicate.getLeftAttribute());
+        Attribute fkAttr = isLeftFirst ? predicate.getLeftAttribute() : predicate.getRightAttribute();
+        Attribute keyAttr = isLeftFirst ? predicate.getRightAttribute() : predicate.getLeftAttribute();
+
+        ForeignKey foreignKey = catalogue.getForeignKey(fkAttr);
+        return foreignKey != null
+                && foreignKey.getReferencedRelation() == ((Scan) right).getRelation()
+                && foreignKey.getReferencedAttribute().getName().equals(keyAttr.getName());
+    }
+
     // We can't guarantee that getOutput() is not null except for Scan
     // So we need to recursively get all attributes that need to be projected
     private Set<Attribute> getAllProjectAttributes(Operator plan) {
@@ -251,12 +1039,20 @@ public class Optimiser {
             attributes.addAll(getAllProjectAttributes(((BinaryOperator) plan).getRight()));
         }
 
+        if (plan instanceof MultiwayJoin) {
+            plan.getInputs().forEach(input -> attributes.addAll(getAllProjectAttributes(input)));
+        }
+
         // For Project operator, there is no need for recursion, just add getAttributes()
         if (plan instanceof Project) {
             attributes.addAll(((Project) plan).getAttributes());
         }
 
-        if (plan instanceof Select) {
+        if (plan instanceof Aggregate) {
+            attributes.addAll(((Aggregate) plan).getAttributes());
+        }
+
+        if (plan instanceof Select || plan instanceof TopK) {
             attributes.addAll(getAllProjectAttributes(((UnaryOperator) plan).getInput()));
         }
 
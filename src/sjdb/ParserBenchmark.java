@@ -0,0 +1,74 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compares the time and memory taken to parse queries by QueryParser and by ReusableQueryParser.
+// Usage: ParserBenchmark <catalogue file> <query file> ...
+public class ParserBenchmark {
+    private static final int WARMUP_ROUNDS = 20000;
+    private static final int ROUNDS = 100000;
+
+    private interface Parse {
+        Operator parse(String query) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Catalogue catalogue = new Catalogue();
+        new CatalogueParser(args[0], catalogue).parse();
+
+        List<String> queries = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            queries.add(new String(Files.readAllBytes(Paths.get(args[i])), "UTF-8"));
+        }
+
+        ReusableQueryParser reusableParser = new ReusableQueryParser(catalogue);
+        Parse regexParse = query -> new QueryParser(catalogue, new StringReader(query)).parse();
+        Parse reusableParse = reusableParser::parse;
+
+        // Both parsers must build the same canonical plans
+        for (String query : queries) {
+            String expected = regexParse.parse(query).toString();
+            String actual = reusableParse.parse(query).toString();
+            if (!expected.equals(actual)) {
+                throw new IllegalStateException("Plans differ: " + expected + " / " + actual);
+            }
+        }
+
+        run("QueryParser", regexParse, queries);
+        run("ReusableQueryParser", reusableParse, queries);
+    }
+
+    private static void run(String name, Parse parse, List<String> queries) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            parse.parse(queries.get(i % queries.size()));
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        int plans = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            if (parse.parse(queries.get(i % queries.size())) != null) {
+                plans++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.printf("%-20s %8.0f ns/query %10s bytes/query (%d plans)%n", name, (double) elapsed / ROUNDS,
+                allocated < 0 ? "n/a" : String.valueOf(allocated / ROUNDS), plans);
+    }
+
+    // Bytes allocated by this thread so far, or -1 if the JVM does not measure them
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,142 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the structure of a query plan, so that plans can be
+ * compared and hashed by what they compute rather than by identity or
+ * by their printed form. Two keys are equal if their plans apply the
+ * same operators, with the same predicates, attributes and parameters,
+ * in the same order, to scans of the same relations under the same
+ * aliases. Estimated statistics are not part of the structure.
+ *
+ * A key is built from the operator at the root of a plan and the keys
+ * of its inputs, so the keys of every sub-plan can be built bottom-up
+ * without walking any sub-plan twice. Its hash code is computed once.
+ */
+public class PlanKey {
+	private Class<? extends Operator> type;
+	private List<Object> parameters;
+	private List<PlanKey> inputs;
+	private int hashCode;
+
+	/**
+	 * Create the key of the plan with the given root, whose inputs have
+	 * the given keys
+	 * @param operator Root of the plan
+	 * @param inputs Keys of the inputs of the root, in order
+	 */
+	public PlanKey(Operator operator, List<PlanKey> inputs) {
+		this.type = operator.getClass();
+		this.parameters = getParameters(operator);
+		this.inputs = new ArrayList<PlanKey>(inputs);
+		this.hashCode = (this.type.getName().hashCode() * 31 + this.parameters.hashCode()) * 31
+				+ this.inputs.hashCode();
+	}
+
+	/**
+	 * Return the key of a plan
+	 * @param plan
+	 * @return Key
+	 */
+	public static PlanKey of(Operator plan) {
+		List<PlanKey> inputs = new ArrayList<PlanKey>();
+		if (!(plan instanceof Scan)) {
+			for (Operator input : plan.getInputs()) {
+				inputs.add(of(input));
+			}
+		}
+		return new PlanKey(plan, inputs);
+	}
+
+	/**
+	 * Return the parameters of an operator, besides its inputs, that
+	 * determine its result
+	 * @param op
+	 * @return Parameters, compared with equals()
+	 */
+	private static List<Object> getParameters(Operator op) {
+		if (op instanceof IndexScan) {
+			IndexScan scan = (IndexScan) op;
+			return Arrays.<Object>asList(scan.getRelation().toString(), scan.getRelation().getAttributes(),
+					scan.getAlias(), scan.getIndex().getAttribute(), scan.getIndex().getType(),
+					getParameters(scan.getPredicate()));
+		} else if (op instanceof Scan) {
+			// The attributes are those of the relation, unless it is a view renamed for the query reading it
+			Scan scan = (Scan) op;
+			return Arrays.<Object>asList(scan.getRelation().toString(), scan.getRelation().getAttributes(),
+					scan.getAlias());
+		} else if (op instanceof Select) {
+			return Arrays.<Object>asList(getParameters(((Select) op).getPredicate()));
+		} else if (op instanceof Project) {
+			return Arrays.<Object>asList(((Project) op).getAttributes());
+		} else if (op instanceof IndexJoin) {
+			IndexJoin join = (IndexJoin) op;
+			return Arrays.<Object>asList(getParameters(join.getPredicate()),
+					join.getIndex().getAttribute(), join.getIndex().getType());
+		} else if (op instanceof Join) {
+			return Arrays.<Object>asList(getParameters(((Join) op).getPredicate()));
+		} else if (op instanceof SemiJoin) {
+			return Arrays.<Object>asList(getParameters(((SemiJoin) op).getPredicate()));
+		} else if (op instanceof Product) {
+			return Collections.emptyList();
+		} else if (op instanceof Aggregate) {
+			Aggregate aggregate = (Aggregate) op;
+			List<Object> functions = new ArrayList<Object>();
+			for (AggregateFunction function : aggregate.getFunctions()) {
+				functions.add(Arrays.asList(function.getFunction(), function.getAttribute(),
+						function.getOutputAttribute()));
+			}
+			return Arrays.<Object>asList(aggregate.getGroupingAttributes(), functions);
+		} else if (op instanceof TopK) {
+			TopK topK = (TopK) op;
+			return Arrays.<Object>asList(topK.getOrderAttributes(), topK.getDescending(), topK.getLimit());
+		} else if (op instanceof MultiwayJoin) {
+			List<Object> predicates = new ArrayList<Object>();
+			for (Predicate predicate : ((MultiwayJoin) op).getPredicates()) {
+				predicates.add(getParameters(predicate));
+			}
+			return predicates;
+		}
+		throw new IllegalArgumentException("No plan key for operator " + op.getClass().getSimpleName());
+	}
+
+	/**
+	 * Return the parts of a predicate, compared with equals(); the values
+	 * of an in-list are compared as a set
+	 * @param predicate
+	 * @return Parts
+	 */
+	private static List<Object> getParameters(Predicate predicate) {
+		if (predicate.isDisjunction()) {
+			List<Object> disjuncts = new ArrayList<Object>();
+			for (Predicate disjunct : predicate.getDisjuncts()) {
+				disjuncts.add(getParameters(disjunct));
+			}
+			return disjuncts;
+		}
+		return Arrays.<Object>asList(predicate.getLeftAttribute(), predicate.getRightAttribute(),
+				predicate.getRightValue(), predicate.getRightValues());
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof PlanKey)) {
+			return false;
+		}
+		PlanKey rhs = (PlanKey) obj;
+		return this.hashCode == rhs.hashCode && this.type == rhs.type
+				&& this.parameters.equals(rhs.parameters) && this.inputs.equals(rhs.inputs);
+	}
+}
@@ -31,4 +31,29 @@ public interface PlanVisitor {
 	 * @param op
 	 */
 	public void visit(Join op);
+	/**
+	 * Visit an IndexScan operator.
+	 * @param op IndexScan operator to be visited
+	 */
+	public void visit(IndexScan op);
+	/**
+	 * Visit a SemiJoin operator.
+	 * @param op SemiJoin operator to be visited
+	 */
+	public void visit(SemiJoin op);
+	/**
+	 * Visit an Aggregate operator.
+	 * @param op Aggregate operator to be visited
+	 */
+	public void visit(Aggregate op);
+	/**
+	 * Visit a TopK operator.
+	 * @param op TopK operator to be visited
+	 */
+	public void visit(TopK op);
+	/**
+	 * Visit a MultiwayJoin operator.
+	 * @param op MultiwayJoin operator to be visited
+	 */
+	public void visit(MultiwayJoin op);
 }
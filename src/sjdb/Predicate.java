@@ -1,5 +1,12 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * This class is used to represent the predicates associated with 
  * joins and select operators. Note that, while a string value is
@@ -7,12 +14,18 @@ package sjdb;
  * only used by the toString() method; a future version of
  * Attribute which uses more expressive synopses may change this.
  * 
+ * Besides the two simple forms, a predicate may be an in-list of the
+ * form attr IN (value,...,value), whose values are kept in a hash set,
+ * or a disjunction of simple and in-list predicates joined by OR.
+ * 
  * @author nmg
  */
 public class Predicate {
 	private Attribute leftAttribute;
 	private Attribute rightAttribute;
 	private String rightValue;
+	private Set<String> rightValues;
+	private List<Predicate> disjuncts;
 
 	/**
 	 * Create a predicate of the form attr=attr
@@ -34,6 +47,24 @@ public class Predicate {
 		this.rightValue = value;
 	}
 
+	/**
+	 * Create a predicate of the form attr IN (value,...,value)
+	 * @param left
+	 * @param values
+	 */
+	public Predicate(Attribute left, Collection<String> values) {
+		this.leftAttribute = left;
+		this.rightValues = new LinkedHashSet<String>(values);
+	}
+
+	/**
+	 * Create a predicate of the form pred OR pred OR ... OR pred
+	 * @param disjuncts
+	 */
+	public Predicate(List<Predicate> disjuncts) {
+		this.disjuncts = disjuncts;
+	}
+
 	/**
 	 * Return true if this predicate is of the form attr=value
 	 * @return
@@ -43,7 +74,32 @@ public class Predicate {
 	}
 	
 	/**
-	 * Return ATTR for predicates of the form ATTR=attr or ATTR=value
+	 * Return true if this predicate is of the form attr=attr
+	 * @return
+	 */
+	public boolean equalsAttribute() {
+		return this.rightAttribute != null;
+	}
+	
+	/**
+	 * Return true if this predicate is of the form attr IN (value,...,value)
+	 * @return
+	 */
+	public boolean isInList() {
+		return this.rightValues != null;
+	}
+	
+	/**
+	 * Return true if this predicate is a disjunction of other predicates
+	 * @return
+	 */
+	public boolean isDisjunction() {
+		return this.disjuncts != null;
+	}
+	
+	/**
+	 * Return ATTR for predicates of the form ATTR=attr, ATTR=value or
+	 * ATTR IN (values); null for disjunctions
 	 * @return left attribute
 	 */
 	public Attribute getLeftAttribute() {
@@ -66,11 +122,59 @@ public class Predicate {
 		return this.rightValue;
 	}
 	
+	/**
+	 * Return VALUES for predicates of the form attr IN (VALUES)
+	 * @return right values
+	 */
+	public Set<String> getRightValues() {
+		return this.rightValues;
+	}
+	
+	/**
+	 * Return the predicates joined by OR in a disjunction
+	 * @return disjuncts
+	 */
+	public List<Predicate> getDisjuncts() {
+		return this.disjuncts;
+	}
+	
+	/**
+	 * Return all the attributes referenced by this predicate
+	 * @return attributes
+	 */
+	public List<Attribute> getAttributes() {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		if (this.disjuncts != null) {
+			for (Predicate disjunct : this.disjuncts) {
+				attributes.addAll(disjunct.getAttributes());
+			}
+		} else {
+			attributes.add(this.leftAttribute);
+			if (this.rightAttribute != null) {
+				attributes.add(this.rightAttribute);
+			}
+		}
+		return attributes;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		if (this.rightValue == null) {
+		if (this.disjuncts != null) {
+			String ret = this.disjuncts.get(0).toString();
+			for (int i = 1; i < this.disjuncts.size(); i++) {
+				ret += " OR " + this.disjuncts.get(i).toString();
+			}
+			return ret;
+		} else if (this.rightValues != null) {
+			String ret = this.leftAttribute.toString() + " IN (";
+			Iterator<String> iter = this.rightValues.iterator();
+			while (iter.hasNext()) {
+				ret += "\"" + iter.next() + "\"" + (iter.hasNext() ? "," : "");
+			}
+			return ret + ")";
+		} else if (this.rightValue == null) {
 			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString(); 
 		} else {
 			return this.leftAttribute.toString() + "=\"" + this.rightValue + "\"";
@@ -44,10 +44,10 @@ public class Project extends UnaryOperator {
 		String ret = "PROJECT [";
 		Iterator<Attribute> iter = this.attributes.iterator();
 		
-		ret += iter.next().getName();
+		ret += iter.next().toString();
 		
 		while (iter.hasNext()) {
-			ret += "," + iter.next().getName();
+			ret += "," + iter.next().toString();
 		}
 		ret += "] (" + getInput().toString() + ")";
 		
@@ -5,6 +5,7 @@ package sjdb;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -15,21 +16,35 @@ import java.util.regex.Matcher;
  * The canonical query is of the form:
  * 
  * SELECT <attribute name>,<attribute name>,...,<attribute name>
- * FROM <relation name>,<relation name>,...,<relation name>
+ * FROM <relation name> [[AS] <alias>],...,<relation name> [[AS] <alias>]
  * WHERE <predicate>,<predicate>,...,<predicate>
+ * GROUP BY <attribute name>,<attribute name>,...,<attribute name>
+ * ORDER BY <attribute name> [ASC|DESC],...,<attribute name> [ASC|DESC]
+ * LIMIT <number of tuples>
  * 
- * where <predicate> is of one of the following two forms:
+ * where <predicate> is of one of the following forms:
  * 
  * <attribute name>="<value>"
  * <attribute name>=<attribute name>
+ * <attribute name> IN ("<value>","<value>",...,"<value>")
+ * <predicate> OR <predicate> OR ... OR <predicate>
  * 
- * The WHERE line (corresponding to the select operators) is optional and 
- * may be omitted; the other lines are required.
+ * The WHERE line (corresponding to the select operators) and the GROUP BY,
+ * ORDER BY and LIMIT lines are optional and may be omitted, but each may be
+ * given once, and only in the order above; the other lines are required.
+ * The LIMIT clause may also end the ORDER BY line. The query
+ * ends at the end of the input or at an empty line.
+ * The SELECT line may also name aggregates of the form COUNT(*) or
+ * <function>(<attribute name>), where <function> is one of COUNT, SUM,
+ * MIN, MAX and AVG; only COUNT may be applied to *.
+ * An attribute name may be qualified by the alias or name of its relation,
+ * as in p.persname; the names are resolved by a QueryScope.
  * 
  * To form the canonical query, a left-deep tree of cartesian
  * products over scans over the named relations is built, following by a series
- * of select with the given predicates, and then a single project 
- * with the given attributes.
+ * of select with the given predicates, then an aggregate if the query has a
+ * GROUP BY line or any aggregates, then a top-k if the query has an ORDER BY
+ * or LIMIT line, and then a single project with the given attributes.
  * 
  * Note that the author of this class was extremely lazy, and so the parsing 
  * is unforgiving and may be sensitive to extraneous whitespace. In particular, 
@@ -39,12 +54,20 @@ import java.util.regex.Matcher;
  * @author nmg
  */
 public class QueryParser {
+	private static final Pattern IN_LIST = Pattern.compile("([\\w.]+)\\s+IN\\s*\\((.*)\\)");
+	private static final Pattern VALUE_EQUALS = Pattern.compile("([\\w.]+)=\"(\\w+)\"");
+	private static final Pattern AGGREGATE = Pattern.compile("(COUNT|SUM|MIN|MAX|AVG)\\(\\s*(\\*|[\\w.]+)\\s*\\)");
+	// The optional lines after FROM, in the order they must come in
+	private static final String[] CLAUSES = {"WHERE", "GROUP BY", "ORDER BY", "LIMIT"};
+	
 	private BufferedReader reader;
 	private Catalogue catalogue;
+	private QueryScope scope;
 
 	/**
 	 * Create a new QueryParser. This class is intended to be used once only;
-	 * repeated calls to parse() may cause unexpected behaviour.
+	 * repeated calls to parse() may cause unexpected behaviour. To parse a
+	 * stream of queries, split it with readQuery() and use one parser per query.
 	 * 
 	 * @param catalogue
 	 * @param input
@@ -53,6 +76,37 @@ public class QueryParser {
 	public QueryParser(Catalogue catalogue, Reader input) throws Exception {
 		this.catalogue = catalogue;
 		this.reader = new BufferedReader(input);
+		this.scope = new QueryScope(catalogue);
+	}
+	
+	/**
+	 * Read the lines of the next query from a stream of queries, in which
+	 * each query is ended by an empty line, by a ";" at the end of a line,
+	 * or by the end of the stream. Empty lines between queries are skipped.
+	 * 
+	 * @param in
+	 * @return The query, or null at the end of the stream
+	 * @throws IOException
+	 */
+	public static String readQuery(BufferedReader in) throws IOException {
+		StringBuilder query = new StringBuilder();
+		String line;
+		
+		while ((line = in.readLine()) != null) {
+			String trimmed = line.trim();
+			boolean isEnd = trimmed.isEmpty() || trimmed.endsWith(";");
+			if (trimmed.endsWith(";")) {
+				trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+			}
+			if (!trimmed.isEmpty()) {
+				query.append(trimmed).append('\n');
+			}
+			if (isEnd && query.length() > 0) {
+				break;
+			}
+		}
+		
+		return query.length() > 0 ? query.toString() : null;
 	}
 	
 	/**
@@ -63,70 +117,89 @@ public class QueryParser {
 	 * @throws Exception
 	 */
 	public Operator parse() throws Exception {
-		Operator product, select, project;
+		Operator product, select, aggregate, topk, project;
 		String projectLine = this.reader.readLine();
 		String productLine = this.reader.readLine();
-		String selectLine = this.reader.readLine();
+		String selectLine = null;
+		String groupLine = null;
+		String orderLine = null;
+		String limitLine = null;
+		String line;
+		
+		// the remaining lines are optional, and the query ends at an empty line
+		int lastClause = -1;
+		while ((line = this.reader.readLine()) != null && !line.trim().isEmpty()) {
+			int clause = getClause(line);
+			if (clause >= 0 && clause <= lastClause) {
+				throw new DatabaseException("Line " + line + " is out of order: WHERE, GROUP BY, ORDER BY and LIMIT "
+						+ "may each be given once, in that order");
+			}
+			lastClause = Math.max(lastClause, clause);
+			if (line.startsWith("WHERE")) {
+				selectLine = line;
+			} else if (line.startsWith("GROUP BY")) {
+				groupLine = line;
+			} else if (line.startsWith("ORDER BY")) {
+				orderLine = line;
+			} else if (line.startsWith("LIMIT")) {
+				limitLine = line;
+			}
+		}
+		if (orderLine != null && orderLine.contains(" LIMIT ")) {
+			limitLine = orderLine.substring(orderLine.indexOf(" LIMIT ") + 1);
+			orderLine = orderLine.substring(0, orderLine.indexOf(" LIMIT "));
+		}
 		
 		product = parseProduct(productLine);
-		if (selectLine != null && selectLine.startsWith("WHERE")) {
+		if (selectLine != null) {
 			select = parseSelect(selectLine, product); 
-			project = parseProject(projectLine, select);
 		} else {
-			project = parseProject(projectLine, product);
+			select = product;
+		}
+		aggregate = parseAggregate(projectLine, groupLine, orderLine, select);
+		topk = parseTopK(orderLine, limitLine, aggregate);
+		project = parseProject(projectLine, topk);
+		// SELECT * names no aggregates, so any the aggregate computes are only ordered by, and are not output
+		if (project == topk && aggregate instanceof Aggregate && !((Aggregate) aggregate).getFunctions().isEmpty()) {
+			project = new Project(topk, ((Aggregate) aggregate).getGroupingAttributes());
 		}
 		
 		return project;
 	}
 	
 	/**
-	 * Parse a "FROM ..." line 
+	 * Return the position in CLAUSES of the clause on a line
 	 * @param line
-	 * @return
+	 * @return Position, or -1 if the line does not start with a clause
 	 */
-	public Operator parseProduct(String line) {
-		String[] rels = line.split("FROM\\s+");
-		String[] reln = rels[1].split("\\s*,\\s*");
-		
-		return buildProduct(reln);
+	private static int getClause(String line) {
+		for (int i = 0; i < CLAUSES.length; i++) {
+			if (line.startsWith(CLAUSES[i])) {
+				return i;
+			}
+		}
+		return -1;
 	}
 	
 	/**
-	 * Build a left-deep cartesian product tree from the relations
-	 * with the given names
-	 * @param names
+	 * Parse a "FROM ..." line, and build a left-deep cartesian product
+	 * tree over scans of the relations
+	 * @param line
 	 * @return
+	 * @throws DatabaseException
 	 */
-	private Operator buildProduct(String[] names) {
-		Operator left = buildScan(names[0].trim());
-		Operator right;
-		Operator accum;
+	public Operator parseProduct(String line) throws DatabaseException {
+		String[] rels = line.split("FROM\\s+");
+		String[] reln = rels[1].split("\\s*,\\s*");
 		
-		if (names.length>1) {
-			for (int i = 1; i < names.length; i++) {
-				right = buildScan(names[i].trim());
-				accum = new Product(left, right);
-				left = accum;
-			}
+		this.scope.reset();
+		for (int i=0; i<reln.length; i++) {
+			// <relation name>, <relation name> <alias> or <relation name> AS <alias>
+			String[] parts = reln[i].trim().split("\\s+");
+			this.scope.addRelation(parts[0], parts.length > 1 ? parts[parts.length - 1] : null);
 		}
 		
-		return left;
-	}
-	
-	/**
-	 * Build a scan operator that reads the relation with the given
-	 * name
-	 * @param name
-	 * @return
-	 */
-	private Operator buildScan(String name) {
-		Operator op = null;
-		try {
-			op = new Scan(this.catalogue.getRelation(name));
-		} catch (Exception e) {
-			System.err.println(e.toString());
-		}
-		return op;
+		return this.scope.buildProduct();
 	}
 	
 	/**
@@ -135,38 +208,233 @@ public class QueryParser {
 	 * @param op
 	 * @return
 	 */
-	private Operator parseSelect(String line, Operator op) {
+	private Operator parseSelect(String line, Operator op) throws DatabaseException {
 		String[] prds = line.split("WHERE\\s+");
 
-		String[] pred = prds[1].split("\\s*,\\s*");
+		List<String> pred = splitPredicates(prds[1]);
 		Operator ret = op;
 		
-		for (int i=0; i<pred.length; i++) {
-			ret = buildSelect(pred[i].trim(), ret);
+		for (int i=0; i<pred.size(); i++) {
+			ret = buildSelect(pred.get(i), ret);
 		}
 		
 		return ret;
 	}
 	
+	/**
+	 * Split a comma-separated list of predicates, ignoring the commas
+	 * inside the brackets of an in-list.
+	 * @param list
+	 * @return
+	 */
+	private List<String> splitPredicates(String list) {
+		List<String> preds = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		
+		for (int i=0; i<list.length(); i++) {
+			char c = list.charAt(i);
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				preds.add(list.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		preds.add(list.substring(start).trim());
+		
+		return preds;
+	}
+	
 	/**
 	 * Build a chain of select operators.
 	 * @param pred
 	 * @param op
 	 * @return
 	 */
-	private Operator buildSelect(String pred, Operator op) {
-		Pattern p = Pattern.compile("(\\w+)=\"(\\w+)\"");
-		Matcher m = p.matcher(pred);
+	private Operator buildSelect(String pred, Operator op) throws DatabaseException {
+		return new Select(op, buildPredicate(pred));
+	}
+	
+	/**
+	 * Build a predicate, which may be a disjunction or an in-list.
+	 * @param pred
+	 * @return
+	 */
+	private Predicate buildPredicate(String pred) throws DatabaseException {
+		String[] disjuncts = pred.split("\\s+OR\\s+");
+		if (disjuncts.length > 1) {
+			List<Predicate> preds = new ArrayList<Predicate>();
+			for (int i=0; i<disjuncts.length; i++) {
+				preds.add(buildPredicate(disjuncts[i].trim()));
+			}
+			return new Predicate(preds);
+		}
+		
+		Matcher in = IN_LIST.matcher(pred);
+		if (in.matches()) {
+			List<String> values = new ArrayList<String>();
+			String[] vals = in.group(2).trim().split("\\s*,\\s*");
+			for (int i=0; i<vals.length; i++) {
+				values.add(vals[i].replaceAll("^\"|\"$", ""));
+			}
+			return new Predicate(this.scope.resolve(in.group(1)), values);
+		}
+		
+		Matcher m = VALUE_EQUALS.matcher(pred);
 		Predicate ret;
 		
 		if (m.matches()) {
-			ret = new Predicate(new Attribute(m.group(1)), m.group(2));
+			ret = new Predicate(this.scope.resolve(m.group(1)), m.group(2));
 		} else {
 			String[] atts = pred.split("=");
-			ret = new Predicate(new Attribute(atts[0]), new Attribute(atts[1]));
+			ret = new Predicate(this.scope.resolve(atts[0].trim()), this.scope.resolve(atts[1].trim()));
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * Parse the aggregates on a "SELECT ..." line and an optional "GROUP BY ..."
+	 * line, and build the corresponding aggregate operator (if any). The
+	 * aggregates on an optional "ORDER BY ..." line are computed too.
+	 * @param projectLine
+	 * @param groupLine
+	 * @param orderLine
+	 * @param op
+	 * @return
+	 */
+	private Operator parseAggregate(String projectLine, String groupLine, String orderLine, Operator op)
+			throws DatabaseException {
+		ArrayList<Attribute> groups = new ArrayList<Attribute>();
+		ArrayList<AggregateFunction> functions = new ArrayList<AggregateFunction>();
+		
+		if (groupLine != null && groupLine.startsWith("GROUP BY")) {
+			String[] attr = groupLine.split("GROUP BY\\s+")[1].split("\\s*,\\s*");
+			for (int i=0; i<attr.length; i++) {
+				groups.add(this.scope.resolve(attr[i].trim()));
+			}
+		}
+		
+		String[] atts = projectLine.split("SELECT\\s+")[1].split("\\s*,\\s*");
+		for (int i=0; i<atts.length; i++) {
+			Matcher m = AGGREGATE.matcher(atts[i].trim());
+			if (m.matches()) {
+				functions.add(buildAggregateFunction(m));
+			}
+		}
+		
+		ArrayList<AggregateFunction> orderFunctions = new ArrayList<AggregateFunction>();
+		if (orderLine != null) {
+			String[] keys = orderLine.split("ORDER BY\\s+")[1].split("\\s*,\\s*");
+			for (int i=0; i<keys.length; i++) {
+				Matcher m = AGGREGATE.matcher(keys[i].trim().split("\\s+")[0]);
+				if (m.matches()) {
+					orderFunctions.add(buildAggregateFunction(m));
+				}
+			}
+		}
+		
+		if (groups.isEmpty() && functions.isEmpty()) {
+			if (!orderFunctions.isEmpty()) {
+				throw new DatabaseException("ORDER BY " + orderFunctions.get(0)
+						+ " needs a GROUP BY clause or an aggregate in the select list");
+			}
+			return op;
+		}
+		addOrderFunctions(functions, orderFunctions);
+		return new Aggregate(op, groups, functions);
+	}
+	
+	/**
+	 * Add the aggregates named in ORDER BY to those of the select list,
+	 * unless they are already computed
+	 * @param functions Aggregates of the select list
+	 * @param orderFunctions Aggregates named in ORDER BY
+	 * @return True if any aggregate was added
+	 */
+	static boolean addOrderFunctions(List<AggregateFunction> functions, List<AggregateFunction> orderFunctions) {
+		boolean isAdded = false;
+		for (AggregateFunction orderFunction : orderFunctions) {
+			boolean isComputed = false;
+			for (AggregateFunction function : functions) {
+				isComputed |= function.getOutputAttribute().equals(orderFunction.getOutputAttribute());
+			}
+			if (!isComputed) {
+				functions.add(orderFunction);
+				isAdded = true;
+			}
+		}
+		return isAdded;
+	}
+	
+	/**
+	 * Check that the results of an aggregate can be ordered by the given
+	 * attributes, which must be grouping attributes or aggregates
+	 * @param orderAttributes
+	 * @param aggregate
+	 * @throws DatabaseException If an attribute is not output by the aggregate
+	 */
+	static void checkOrderAttributes(List<Attribute> orderAttributes, Aggregate aggregate) throws DatabaseException {
+		for (Attribute attr : orderAttributes) {
+			if (!aggregate.getAttributes().contains(attr)) {
+				throw new DatabaseException("ORDER BY " + attr + " is neither a grouping attribute nor an aggregate");
+			}
+		}
+	}
+	
+	/**
+	 * Build an aggregate function from a match of the AGGREGATE pattern
+	 * @param m
+	 * @return
+	 * @throws DatabaseException If a function other than COUNT is applied to *
+	 */
+	private AggregateFunction buildAggregateFunction(Matcher m) throws DatabaseException {
+		AggregateFunction.Function function = AggregateFunction.Function.valueOf(m.group(1));
+		if (m.group(2).equals("*") && function != AggregateFunction.Function.COUNT) {
+			throw new DatabaseException(function + "(*) is not an aggregate: only COUNT can be applied to *");
+		}
+		Attribute attribute = m.group(2).equals("*") ? null : this.scope.resolve(m.group(2));
+		
+		return new AggregateFunction(function, attribute);
+	}
+	
+	/**
+	 * Parse optional "ORDER BY ..." and "LIMIT ..." lines, and build the
+	 * corresponding top-k operator (if any).
+	 * @param orderLine
+	 * @param limitLine
+	 * @param op
+	 * @return
+	 */
+	private Operator parseTopK(String orderLine, String limitLine, Operator op) throws DatabaseException {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		ArrayList<Boolean> descending = new ArrayList<Boolean>();
+		int limit = TopK.UNLIMITED;
+		
+		if (orderLine == null && limitLine == null) {
+			return op;
+		}
+		
+		if (orderLine != null) {
+			String[] keys = orderLine.split("ORDER BY\\s+")[1].split("\\s*,\\s*");
+			for (int i=0; i<keys.length; i++) {
+				String[] parts = keys[i].trim().split("\\s+");
+				Matcher m = AGGREGATE.matcher(parts[0]);
+				attributes.add(m.matches() ? buildAggregateFunction(m).getOutputAttribute() : this.scope.resolve(parts[0]));
+				descending.add(parts.length > 1 && parts[1].equals("DESC"));
+			}
+			if (op instanceof Aggregate) {
+				checkOrderAttributes(attributes, (Aggregate) op);
+			}
+		}
+		if (limitLine != null) {
+			limit = Integer.parseInt(limitLine.split("LIMIT\\s+")[1].trim());
 		}
 		
-		return new Select(op, ret);
+		return new TopK(op, attributes, descending, limit);
 	}
 	
 	/**
@@ -175,7 +443,7 @@ public class QueryParser {
 	 * @param op
 	 * @return
 	 */
-	private Operator parseProject(String line, Operator op) {
+	private Operator parseProject(String line, Operator op) throws DatabaseException {
 		String[] atts = line.split("SELECT\\s+");		
 		if (atts[1].trim().equals("*")) {
 			return op;
@@ -184,7 +452,12 @@ public class QueryParser {
 			ArrayList<Attribute> attributes = new ArrayList<Attribute>();
 
 			for (int i=0; i<attr.length; i++) {
-				attributes.add(new Attribute(attr[i].trim()));
+				Matcher m = AGGREGATE.matcher(attr[i].trim());
+				if (m.matches()) {
+					attributes.add(buildAggregateFunction(m).getOutputAttribute());
+				} else {
+					attributes.add(this.scope.resolve(attr[i].trim()));
+				}
 			}
 
 			return new Project(op, attributes);
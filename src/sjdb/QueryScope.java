@@ -0,0 +1,149 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds the relations named in the FROM clause of a query,
+ * builds the scans of them, and resolves the attribute names used in
+ * the rest of the query against them.
+ *
+ * A relation may be given an alias in the FROM clause (Person p, or
+ * Person AS p), and an attribute may be named on its own (persname) or
+ * qualified by the alias of its relation, or by the relation name if
+ * it has no alias (p.persname, Person.persname). A relation named more
+ * than once, as in a self-join, must be given a different alias each
+ * time.
+ *
+ * Only the relations that need it are qualified: those with an alias,
+ * and those that declare an attribute name also declared by another
+ * relation in the FROM clause. The scan of a qualified relation outputs
+ * attributes qualified by its alias (or name), so that they differ from
+ * those of the other relations, and every reference to one of them is
+ * resolved to the qualified attribute, whether or not it is qualified
+ * in the query. The attributes of the other relations are left as
+ * they were, so the plans of queries without shared names do not change.
+ *
+ * A scope can be reset to read another query.
+ */
+public class QueryScope {
+	private Catalogue catalogue;
+	private List<NamedRelation> relations;
+	private List<String> aliases;
+	private List<Scan> scans;
+
+	/**
+	 * Create a new scope for queries over the given catalogue
+	 * @param catalogue
+	 */
+	public QueryScope(Catalogue catalogue) {
+		this.catalogue = catalogue;
+		this.relations = new ArrayList<NamedRelation>();
+		this.aliases = new ArrayList<String>();
+		this.scans = new ArrayList<Scan>();
+	}
+
+	/**
+	 * Remove the relations of the previous query
+	 */
+	public void reset() {
+		this.relations.clear();
+		this.aliases.clear();
+		this.scans.clear();
+	}
+
+	/**
+	 * Add a relation named in the FROM clause
+	 * @param name Relation name
+	 * @param alias Alias, or null if the relation has none
+	 * @throws DatabaseException If there is no such relation
+	 */
+	public void addRelation(String name, String alias) throws DatabaseException {
+		this.relations.add(this.catalogue.getRelation(name));
+		this.aliases.add(alias);
+	}
+
+	/**
+	 * Build a left-deep tree of cartesian products over scans of the
+	 * relations, in the order they were added
+	 * @return Product tree
+	 * @throws DatabaseException If two relations would have the same qualifier
+	 */
+	public Operator buildProduct() throws DatabaseException {
+		for (int i = 0; i < this.relations.size(); i++) {
+			for (int j = 0; j < i; j++) {
+				if (getName(i).equals(getName(j))) {
+					throw new DatabaseException("Relation " + getName(i) + " is named more than once, and needs an alias");
+				}
+			}
+		}
+
+		Operator left = null;
+		for (int i = 0; i < this.relations.size(); i++) {
+			Scan scan = new Scan(this.relations.get(i), isQualified(i) ? getName(i) : null);
+			this.scans.add(scan);
+			left = left == null ? scan : new Product(left, scan);
+		}
+		return left;
+	}
+
+	/**
+	 * Resolve an attribute reference, qualified or not
+	 * @param reference Attribute name, or qualifier.name
+	 * @return Attribute as output by the scan of its relation
+	 * @throws DatabaseException If no relation, or more than one, has the attribute
+	 */
+	public Attribute resolve(String reference) throws DatabaseException {
+		int dot = reference.indexOf('.');
+		return dot < 0 ? resolve(null, reference) : resolve(reference.substring(0, dot), reference.substring(dot + 1));
+	}
+
+	/**
+	 * Resolve an attribute reference
+	 * @param qualifier Alias or relation name, or null if the reference is not qualified
+	 * @param name Attribute name
+	 * @return Attribute as output by the scan of its relation
+	 * @throws DatabaseException If no relation, or more than one, has the attribute
+	 */
+	public Attribute resolve(String qualifier, String name) throws DatabaseException {
+		Attribute found = null;
+		for (int i = 0; i < this.scans.size(); i++) {
+			if (qualifier != null && !qualifier.equals(getName(i))) {
+				continue;
+			}
+			for (Attribute attr : this.scans.get(i).getOutput().getAttributes()) {
+				if (attr.getName().equals(name)) {
+					if (found != null) {
+						throw new DatabaseException("Attribute " + name + " is ambiguous, and must be qualified");
+					}
+					found = attr;
+				}
+			}
+		}
+
+		if (found == null) {
+			throw new DatabaseException("Attribute " + (qualifier == null ? name : qualifier + "." + name)
+					+ " not found in the relations of the query");
+		}
+		return found;
+	}
+
+	// The qualifier of the ith relation: its alias, or else its name
+	private String getName(int i) {
+		return this.aliases.get(i) != null ? this.aliases.get(i) : this.relations.get(i).toString();
+	}
+
+	private boolean isQualified(int i) {
+		if (this.aliases.get(i) != null) {
+			return true;
+		}
+		for (Attribute attr : this.relations.get(i).getAttributes()) {
+			for (int j = 0; j < this.relations.size(); j++) {
+				if (j != i && this.relations.get(j).hasAttribute(new Attribute(attr.getName()))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
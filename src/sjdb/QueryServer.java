@@ -0,0 +1,72 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Serves queries on a local socket, so that the catalogue is loaded, and the JVM warmed up, only once.
+// A client sends queries in the format read by QueryParser, each ended by an empty line or a ";" (see
+// QueryParser.readQuery()); for each query, the server streams back the plans printed by SJDB.explain(),
+// or an ERROR line, followed by a line holding only END. The outputs are cached across sessions in a ResultCache,
+// keyed by the canonical plan of the query.
+public class QueryServer {
+    public static final String END_OF_RESPONSE = "END";
+
+    private Catalogue catalogue;
+    private ServerSocket serverSocket;
+    private ResultCache<SJDB.Explanation> results = new ResultCache<>(SJDB.RESULT_CACHE_CAPACITY);
+    // A session mostly waits for its client, so sessions get a thread each rather than a fixed number of threads
+    private ExecutorService sessions = Executors.newCachedThreadPool();
+
+    public QueryServer(Catalogue catalogue, int port) throws IOException {
+        this.catalogue = catalogue;
+        // Only local clients are served
+        this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Accept clients until the server is closed
+    public void serve() throws IOException {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                sessions.execute(() -> runSession(socket));
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                throw e;
+            }
+        } finally {
+            sessions.shutdown();
+        }
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void runSession(Socket socket) {
+        try (Socket client = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"));
+             PrintStream out = new PrintStream(client.getOutputStream(), false, "UTF-8")) {
+            ReusableQueryParser parser = new ReusableQueryParser(catalogue);
+            String query;
+            while ((query = QueryParser.readQuery(in)) != null) {
+                out.print(SJDB.explain(parser, query, results).text);
+                out.println(END_OF_RESPONSE);
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println(e.toString());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package sjdb;
+
+/**
+ * This class splits a query held in a CharSequence into tokens, for
+ * ReusableQueryParser.
+ *
+ * The tokenizer does not allocate per token: it records the type and
+ * the bounds of the current token in the input, and a String is only
+ * created when the parser asks for the text of a token. A tokenizer
+ * can be reset to read another query.
+ *
+ * Whitespace (including line breaks) only separates tokens. A quoted
+ * value may contain any character, including spaces and commas; a
+ * double quote inside it is written as \".
+ */
+public class QueryTokenizer {
+	/**
+	 * The kinds of token
+	 */
+	public enum Token {
+		WORD, STRING, COMMA, DOT, LPAREN, RPAREN, EQUALS, STAR, SEMICOLON, END
+	}
+
+	private CharSequence input;
+	private int position;
+	private Token token;
+	private int start;
+	private int end;
+	private boolean isEscaped;
+
+	/**
+	 * Start reading the given query
+	 * @param input Query text
+	 */
+	public void reset(CharSequence input) {
+		this.input = input;
+		this.position = 0;
+		this.token = null;
+	}
+
+	/**
+	 * Move to the next token
+	 * @return Type of the new current token
+	 * @throws DatabaseException If a character cannot start a token, or a quoted value is not closed
+	 */
+	public Token next() throws DatabaseException {
+		while (this.position < this.input.length() && Character.isWhitespace(this.input.charAt(this.position))) {
+			this.position++;
+		}
+		this.start = this.position;
+		this.isEscaped = false;
+		if (this.position == this.input.length()) {
+			this.end = this.position;
+			return this.token = Token.END;
+		}
+
+		char c = this.input.charAt(this.position++);
+		switch (c) {
+		case ',':
+			this.token = Token.COMMA;
+			break;
+		case '.':
+			this.token = Token.DOT;
+			break;
+		case '(':
+			this.token = Token.LPAREN;
+			break;
+		case ')':
+			this.token = Token.RPAREN;
+			break;
+		case '=':
+			this.token = Token.EQUALS;
+			break;
+		case '*':
+			this.token = Token.STAR;
+			break;
+		case ';':
+			this.token = Token.SEMICOLON;
+			break;
+		case '"':
+			// The token covers the contents, without the quotes
+			this.start = this.position;
+			while (this.position < this.input.length() && this.input.charAt(this.position) != '"') {
+				if (this.input.charAt(this.position) == '\\') {
+					this.isEscaped = true;
+					this.position++;
+				}
+				this.position++;
+			}
+			if (this.position >= this.input.length()) {
+				throw new DatabaseException("Unterminated quoted value at position " + (this.start - 1));
+			}
+			this.end = this.position++;
+			return this.token = Token.STRING;
+		default:
+			if (!isWordChar(c)) {
+				throw new DatabaseException("Unexpected character '" + c + "' at position " + this.start);
+			}
+			while (this.position < this.input.length() && isWordChar(this.input.charAt(this.position))) {
+				this.position++;
+			}
+			this.token = Token.WORD;
+		}
+		this.end = this.position;
+		return this.token;
+	}
+
+	/**
+	 * Move back or forward to the token that starts at the given position
+	 * @param position Position returned by getStart()
+	 * @return Type of the new current token
+	 * @throws DatabaseException If a character cannot start a token, or a quoted value is not closed
+	 */
+	public Token seek(int position) throws DatabaseException {
+		this.position = position;
+		return next();
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	/**
+	 * Return the type of the current token
+	 * @return Token type
+	 */
+	public Token getToken() {
+		return this.token;
+	}
+
+	/**
+	 * Return the position of the current token in the query
+	 * @return Position
+	 */
+	public int getStart() {
+		return this.start;
+	}
+
+	/**
+	 * Return true if the current token is the given keyword, in any case
+	 * @param keyword Keyword in upper case
+	 * @return True if the current token is the keyword
+	 */
+	public boolean isKeyword(String keyword) {
+		if (this.token != Token.WORD || this.end - this.start != keyword.length()) {
+			return false;
+		}
+		for (int i = 0; i < keyword.length(); i++) {
+			if (Character.toUpperCase(this.input.charAt(this.start + i)) != keyword.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return true if the next token starts with the given character,
+	 * without moving to it
+	 * @param c Character
+	 * @return True if the next token starts with c
+	 */
+	public boolean isFollowedBy(char c) {
+		int i = this.position;
+		while (i < this.input.length() && Character.isWhitespace(this.input.charAt(i))) {
+			i++;
+		}
+		return i < this.input.length() && this.input.charAt(i) == c;
+	}
+
+	/**
+	 * Return the text of the current word, or the contents of the current quoted value
+	 * @return Token text
+	 */
+	public String getText() {
+		if (!this.isEscaped) {
+			return this.input.subSequence(this.start, this.end).toString();
+		}
+		StringBuilder text = new StringBuilder(this.end - this.start);
+		for (int i = this.start; i < this.end; i++) {
+			char c = this.input.charAt(i);
+			text.append(c == '\\' ? this.input.charAt(++i) : c);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Return the value of the current word as a non-negative number
+	 * @return Number
+	 * @throws DatabaseException If the current token is not a number, or the number is too large for an int
+	 */
+	public int getInt() throws DatabaseException {
+		if (this.token != Token.WORD || this.end == this.start) {
+			throw new DatabaseException("Expected a number at position " + this.start);
+		}
+		int value = 0;
+		for (int i = this.start; i < this.end; i++) {
+			char c = this.input.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new DatabaseException("Expected a number at position " + this.start);
+			}
+			try {
+				value = Math.addExact(Math.multiplyExact(value, 10), c - '0');
+			} catch (ArithmeticException e) {
+				throw new DatabaseException("Number at position " + this.start + " is too large", e);
+			}
+		}
+		return value;
+	}
+}
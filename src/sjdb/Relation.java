@@ -3,6 +3,8 @@ package sjdb;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * The Relation class represents an unnamed relation. It consists of a 
@@ -12,6 +14,11 @@ import java.util.ArrayList;
  */
 public class Relation {
 	private List<Attribute> attributes;
+	/**
+	 * Attributes of this relation keyed by themselves (that is, by name and qualifier),
+	 * so that lookups do not scan the attribute list.
+	 */
+	private Map<Attribute, Attribute> attributesByName;
 	private int size;
 
 	/**
@@ -19,6 +26,7 @@ public class Relation {
 	 */
 	protected Relation(int size) {
 		this.attributes = new ArrayList<Attribute>();
+		this.attributesByName = new HashMap<Attribute, Attribute>();
 		this.size = size;
 	}
 	
@@ -38,10 +46,21 @@ public class Relation {
 	 * the name of the attribute is significant).
 	 * 
 	 * @param attribute
-	 * @return
+	 * @return the matching attribute, or null if there is none
 	 */
 	public Attribute getAttribute(Attribute attribute) {
-		return this.attributes.get(this.attributes.indexOf(attribute));
+		return this.attributesByName.get(attribute);
+	}
+
+	/**
+	 * Return true if this relation contains an attribute with the same
+	 * name as the given one.
+	 * 
+	 * @param attribute
+	 * @return
+	 */
+	public boolean hasAttribute(Attribute attribute) {
+		return this.attributesByName.containsKey(attribute);
 	}
 
 	/**
@@ -56,9 +75,12 @@ public class Relation {
 			// If the attribute has more distinct values than there are tuples
 			// in this relation, limit the distinct values to the number of
 			// tuples
-			this.attributes.add(new Attribute(attribute.getName(), this.size));
-		} else {
-			this.attributes.add(attribute);	
+			attribute = new Attribute(attribute, this.size);
+		}
+		this.attributes.add(attribute);
+		// as with indexOf(), a lookup finds the first attribute with a given name
+		if (!this.attributesByName.containsKey(attribute)) {
+			this.attributesByName.put(attribute, attribute);
 		}
 	}
 	
@@ -0,0 +1,146 @@
+package sjdb;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * This class is a bounded cache of the results of plans, keyed by the
+ * structure of the plan (see PlanKey), so that a plan that is equal to
+ * one already computed is not computed again. Each result is charged a
+ * size, in whatever unit the caller uses, and when the total would
+ * exceed the capacity the least recently used results are evicted until
+ * the new one fits.
+ *
+ * A result cache may be shared by several threads.
+ *
+ * @param <R> Type of the cached results
+ */
+public class ResultCache<R> {
+	private long capacity;
+	private long size;
+	// In access order, so that the first entry is the least recently used
+	private LinkedHashMap<PlanKey, Entry<R>> entries;
+
+	/**
+	 * A cached result, with its size and the relations its plan reads
+	 */
+	private static class Entry<R> {
+		private R result;
+		private long size;
+		private Set<String> relations;
+
+		private Entry(R result, long size, Set<String> relations) {
+			this.result = result;
+			this.size = size;
+			this.relations = relations;
+		}
+	}
+
+	/**
+	 * Create an empty result cache
+	 * @param capacity Largest total size of the cached results
+	 */
+	public ResultCache(long capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<PlanKey, Entry<R>>(16, 0.75f, true);
+	}
+
+	/**
+	 * Return the cached result of a plan
+	 * @param plan
+	 * @return Result of a structurally equal plan, or null if there is none
+	 */
+	public synchronized R get(Operator plan) {
+		Entry<R> entry = this.entries.get(PlanKey.of(plan));
+		return entry == null ? null : entry.result;
+	}
+
+	/**
+	 * Cache the result of a plan, in place of any result it already has,
+	 * unless the result is larger than the whole cache
+	 * @param plan
+	 * @param result
+	 * @param resultSize Size charged for the result
+	 */
+	public synchronized void put(Operator plan, R result, long resultSize) {
+		PlanKey key = PlanKey.of(plan);
+		remove(key);
+		if (resultSize > this.capacity) {
+			return;
+		}
+
+		Iterator<Entry<R>> iter = this.entries.values().iterator();
+		while (this.size + resultSize > this.capacity && iter.hasNext()) {
+			this.size -= iter.next().size;
+			iter.remove();
+		}
+		Set<String> relations = new HashSet<String>();
+		addRelations(plan, relations);
+		this.entries.put(key, new Entry<R>(result, resultSize, relations));
+		this.size += resultSize;
+	}
+
+	/**
+	 * Drop the cached result of a plan
+	 * @param plan
+	 */
+	public synchronized void remove(Operator plan) {
+		remove(PlanKey.of(plan));
+	}
+
+	private void remove(PlanKey key) {
+		Entry<R> entry = this.entries.remove(key);
+		if (entry != null) {
+			this.size -= entry.size;
+		}
+	}
+
+	/**
+	 * Drop every cached result whose plan reads the given relation (or
+	 * view), e.g. after it has changed
+	 * @param relation
+	 */
+	public synchronized void invalidate(NamedRelation relation) {
+		Iterator<Entry<R>> iter = this.entries.values().iterator();
+		while (iter.hasNext()) {
+			Entry<R> entry = iter.next();
+			if (entry.relations.contains(relation.toString())) {
+				this.size -= entry.size;
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Return the total size of the cached results
+	 * @return Size
+	 */
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Return the largest total size of the cached results
+	 * @return Capacity
+	 */
+	public long getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Add the names of the relations scanned by a plan to a set
+	 * @param plan
+	 * @param relations
+	 */
+	private static void addRelations(Operator plan, Set<String> relations) {
+		if (plan instanceof Scan) {
+			relations.add(((Scan) plan).getRelation().toString());
+			return;
+		}
+		for (Operator input : plan.getInputs()) {
+			addRelations(input, relations);
+		}
+	}
+}
@@ -0,0 +1,382 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class parses queries in the format read by QueryParser, and
+ * builds the same canonical query plans, without regular expressions.
+ *
+ * Unlike QueryParser, a parser can be used for any number of queries,
+ * and it reads each query from a CharSequence with a QueryTokenizer,
+ * so that the only objects created are those of the plan and the
+ * names and values in it. The clauses are recognised by their
+ * keywords rather than by lines, so line breaks and other whitespace
+ * are not significant, keywords may be in any case, and a quoted value
+ * may contain spaces and commas. As in QueryParser, the WHERE, GROUP BY,
+ * ORDER BY and LIMIT clauses are optional, but each may be given once,
+ * and only in that order. A query may end with ";".
+ *
+ * Relations in the FROM clause may be given aliases, and attributes
+ * may be qualified by them, as described in QueryScope.
+ *
+ * A parser is not thread-safe; each thread should use its own.
+ */
+public class ReusableQueryParser {
+	/**
+	 * The keywords of the optional clauses after FROM, in the order the
+	 * clauses must come in
+	 */
+	private static final String[] CLAUSES = {"WHERE", "GROUP", "ORDER", "LIMIT"};
+
+	private Catalogue catalogue;
+	private QueryTokenizer tokenizer;
+	private QueryScope scope;
+
+	/**
+	 * Create a new parser for queries over the given catalogue
+	 * @param catalogue
+	 */
+	public ReusableQueryParser(Catalogue catalogue) {
+		this.catalogue = catalogue;
+		this.tokenizer = new QueryTokenizer();
+		this.scope = new QueryScope(catalogue);
+	}
+
+	/**
+	 * Return the catalogue the queries are parsed against
+	 * @return Catalogue
+	 */
+	public Catalogue getCatalogue() {
+		return this.catalogue;
+	}
+
+	/**
+	 * Parse a query to create a canonical query plan.
+	 * @param query Query text
+	 * @return Canonical plan
+	 * @throws DatabaseException If the query is malformed, names an unknown relation or attribute, or an ambiguous attribute
+	 */
+	public Operator parse(CharSequence query) throws DatabaseException {
+		this.tokenizer.reset(query);
+		this.tokenizer.next();
+
+		expectKeyword("SELECT");
+		// The select list names attributes of the relations in the FROM clause, so that is read first
+		int selectList = this.tokenizer.getStart();
+		while (!this.tokenizer.isKeyword("FROM") && this.tokenizer.getToken() != QueryTokenizer.Token.END) {
+			this.tokenizer.next();
+		}
+		expectKeyword("FROM");
+		Operator plan = parseProduct();
+		int clauses = this.tokenizer.getStart();
+
+		this.tokenizer.seek(selectList);
+		List<AggregateFunction> functions = new ArrayList<AggregateFunction>();
+		// The output attributes, or null for SELECT *
+		List<Attribute> projectAttributes = parseSelectList(functions);
+		if (!this.tokenizer.isKeyword("FROM")) {
+			throw unexpected();
+		}
+		this.tokenizer.seek(clauses);
+
+		List<Attribute> groups = new ArrayList<Attribute>();
+		List<Attribute> orderAttributes = new ArrayList<Attribute>();
+		List<Boolean> descending = new ArrayList<Boolean>();
+		List<AggregateFunction> orderFunctions = new ArrayList<AggregateFunction>();
+		boolean isTopK = false;
+		int limit = TopK.UNLIMITED;
+
+		int lastClause = -1;
+		while (this.tokenizer.getToken() == QueryTokenizer.Token.WORD) {
+			int clause = getClause();
+			if (clause <= lastClause) {
+				throw unexpected();
+			}
+			lastClause = clause;
+			if (this.tokenizer.isKeyword("WHERE")) {
+				this.tokenizer.next();
+				plan = parseSelect(plan);
+			} else if (this.tokenizer.isKeyword("GROUP")) {
+				this.tokenizer.next();
+				expectKeyword("BY");
+				groups.add(parseAttribute());
+				while (skip(QueryTokenizer.Token.COMMA)) {
+					groups.add(parseAttribute());
+				}
+			} else if (this.tokenizer.isKeyword("ORDER")) {
+				this.tokenizer.next();
+				expectKeyword("BY");
+				isTopK = true;
+				parseOrderKey(orderAttributes, descending, orderFunctions);
+				while (skip(QueryTokenizer.Token.COMMA)) {
+					parseOrderKey(orderAttributes, descending, orderFunctions);
+				}
+			} else if (this.tokenizer.isKeyword("LIMIT")) {
+				this.tokenizer.next();
+				isTopK = true;
+				limit = this.tokenizer.getInt();
+				this.tokenizer.next();
+			} else {
+				throw unexpected();
+			}
+		}
+		skip(QueryTokenizer.Token.SEMICOLON);
+		if (this.tokenizer.getToken() != QueryTokenizer.Token.END) {
+			throw unexpected();
+		}
+
+		if (!groups.isEmpty() || !functions.isEmpty()) {
+			// An aggregate that is only ordered by is computed too, but not output
+			if (QueryParser.addOrderFunctions(functions, orderFunctions) && projectAttributes == null) {
+				projectAttributes = new ArrayList<Attribute>(groups);
+			}
+			plan = new Aggregate(plan, groups, functions);
+			QueryParser.checkOrderAttributes(orderAttributes, (Aggregate) plan);
+		} else if (!orderFunctions.isEmpty()) {
+			throw new DatabaseException("ORDER BY " + orderFunctions.get(0)
+					+ " needs a GROUP BY clause or an aggregate in the select list");
+		}
+		if (isTopK) {
+			plan = new TopK(plan, orderAttributes, descending, limit);
+		}
+		if (projectAttributes != null) {
+			plan = new Project(plan, projectAttributes);
+		}
+		return plan;
+	}
+
+	/**
+	 * Parse the attributes and aggregates after SELECT
+	 * @param functions List to which the aggregates are added
+	 * @return Output attributes, or null for *
+	 * @throws DatabaseException
+	 */
+	private List<Attribute> parseSelectList(List<AggregateFunction> functions) throws DatabaseException {
+		if (skip(QueryTokenizer.Token.STAR)) {
+			return null;
+		}
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		do {
+			AggregateFunction function = parseAggregateFunction();
+			if (function != null) {
+				functions.add(function);
+				attributes.add(function.getOutputAttribute());
+			} else {
+				attributes.add(parseAttribute());
+			}
+		} while (skip(QueryTokenizer.Token.COMMA));
+		return attributes;
+	}
+
+	/**
+	 * Parse an aggregate of the form COUNT(*) or <function>(<attribute name>),
+	 * if the current tokens start one
+	 * @return Aggregate function, or null if the current token does not start one
+	 * @throws DatabaseException If the aggregate is malformed, or a function other than COUNT is applied to *
+	 */
+	private AggregateFunction parseAggregateFunction() throws DatabaseException {
+		AggregateFunction.Function function = null;
+		for (AggregateFunction.Function candidate : AggregateFunction.Function.values()) {
+			if (this.tokenizer.isKeyword(candidate.name())) {
+				function = candidate;
+			}
+		}
+		// Without brackets, the name is that of an attribute
+		if (function == null || !this.tokenizer.isFollowedBy('(')) {
+			return null;
+		}
+
+		this.tokenizer.next();
+		expect(QueryTokenizer.Token.LPAREN);
+		Attribute attribute = null;
+		if (this.tokenizer.getToken() == QueryTokenizer.Token.STAR && function != AggregateFunction.Function.COUNT) {
+			throw new DatabaseException(function + "(*) at position " + this.tokenizer.getStart()
+					+ " is not an aggregate: only COUNT can be applied to *");
+		}
+		if (!skip(QueryTokenizer.Token.STAR)) {
+			attribute = parseAttribute();
+		}
+		expect(QueryTokenizer.Token.RPAREN);
+		return new AggregateFunction(function, attribute);
+	}
+
+	/**
+	 * Parse the relation names (each with an optional alias) after FROM,
+	 * and build a left-deep tree of cartesian products over scans of them
+	 * @return Product tree
+	 * @throws DatabaseException
+	 */
+	private Operator parseProduct() throws DatabaseException {
+		this.scope.reset();
+		do {
+			String name = parseWord();
+			String alias = null;
+			if (this.tokenizer.isKeyword("AS")) {
+				this.tokenizer.next();
+				alias = parseWord();
+			} else if (this.tokenizer.getToken() == QueryTokenizer.Token.WORD && !isClauseKeyword()) {
+				alias = parseWord();
+			}
+			this.scope.addRelation(name, alias);
+		} while (skip(QueryTokenizer.Token.COMMA));
+		return this.scope.buildProduct();
+	}
+
+	private boolean isClauseKeyword() {
+		return this.tokenizer.isKeyword("WHERE") || this.tokenizer.isKeyword("GROUP")
+				|| this.tokenizer.isKeyword("ORDER") || this.tokenizer.isKeyword("LIMIT");
+	}
+
+	/**
+	 * Parse the predicates after WHERE, and build a chain of selects on the input
+	 * @param input
+	 * @return Select chain
+	 * @throws DatabaseException
+	 */
+	private Operator parseSelect(Operator input) throws DatabaseException {
+		Operator plan = new Select(input, parseDisjunction());
+		while (skip(QueryTokenizer.Token.COMMA)) {
+			plan = new Select(plan, parseDisjunction());
+		}
+		return plan;
+	}
+
+	/**
+	 * Parse a predicate, which may be a disjunction of simple predicates
+	 * @return Predicate
+	 * @throws DatabaseException
+	 */
+	private Predicate parseDisjunction() throws DatabaseException {
+		Predicate first = parsePredicate();
+		if (!this.tokenizer.isKeyword("OR")) {
+			return first;
+		}
+		List<Predicate> disjuncts = new ArrayList<Predicate>();
+		disjuncts.add(first);
+		while (this.tokenizer.isKeyword("OR")) {
+			this.tokenizer.next();
+			disjuncts.add(parsePredicate());
+		}
+		return new Predicate(disjuncts);
+	}
+
+	/**
+	 * Parse a predicate of the form attr="value", attr=attr or attr IN (...)
+	 * @return Predicate
+	 * @throws DatabaseException
+	 */
+	private Predicate parsePredicate() throws DatabaseException {
+		Attribute left = parseAttribute();
+
+		if (this.tokenizer.isKeyword("IN")) {
+			this.tokenizer.next();
+			expect(QueryTokenizer.Token.LPAREN);
+			List<String> values = new ArrayList<String>();
+			values.add(parseValue());
+			while (skip(QueryTokenizer.Token.COMMA)) {
+				values.add(parseValue());
+			}
+			expect(QueryTokenizer.Token.RPAREN);
+			return new Predicate(left, values);
+		}
+
+		expect(QueryTokenizer.Token.EQUALS);
+		if (this.tokenizer.getToken() == QueryTokenizer.Token.STRING) {
+			return new Predicate(left, parseValue());
+		}
+		return new Predicate(left, parseAttribute());
+	}
+
+	/**
+	 * Parse an ORDER BY key: an attribute or aggregate, then optionally ASC or DESC
+	 * @param attributes List to which the order attribute is added
+	 * @param descending List to which the direction is added
+	 * @param functions List to which the aggregate is added, if the key is one
+	 * @throws DatabaseException
+	 */
+	private void parseOrderKey(List<Attribute> attributes, List<Boolean> descending, List<AggregateFunction> functions)
+			throws DatabaseException {
+		AggregateFunction function = parseAggregateFunction();
+		if (function != null) {
+			functions.add(function);
+			attributes.add(function.getOutputAttribute());
+		} else {
+			attributes.add(parseAttribute());
+		}
+
+		boolean isDescending = this.tokenizer.isKeyword("DESC");
+		if (isDescending || this.tokenizer.isKeyword("ASC")) {
+			this.tokenizer.next();
+		}
+		descending.add(isDescending);
+	}
+
+	// An attribute name, optionally qualified by an alias or relation name
+	private Attribute parseAttribute() throws DatabaseException {
+		String name = parseWord();
+		if (!skip(QueryTokenizer.Token.DOT)) {
+			return this.scope.resolve(null, name);
+		}
+		return this.scope.resolve(name, parseWord());
+	}
+
+	private String parseWord() throws DatabaseException {
+		if (this.tokenizer.getToken() != QueryTokenizer.Token.WORD) {
+			throw unexpected();
+		}
+		String word = this.tokenizer.getText();
+		this.tokenizer.next();
+		return word;
+	}
+
+	// A value is usually quoted, but a plain word is also taken as a value in an in-list
+	private String parseValue() throws DatabaseException {
+		if (this.tokenizer.getToken() != QueryTokenizer.Token.STRING
+				&& this.tokenizer.getToken() != QueryTokenizer.Token.WORD) {
+			throw unexpected();
+		}
+		String value = this.tokenizer.getText();
+		this.tokenizer.next();
+		return value;
+	}
+
+	private void expectKeyword(String keyword) throws DatabaseException {
+		if (!this.tokenizer.isKeyword(keyword)) {
+			throw new DatabaseException("Expected " + keyword + " at position " + this.tokenizer.getStart());
+		}
+		this.tokenizer.next();
+	}
+
+	private void expect(QueryTokenizer.Token token) throws DatabaseException {
+		if (!skip(token)) {
+			throw new DatabaseException("Expected " + token + " at position " + this.tokenizer.getStart());
+		}
+	}
+
+	// Move past the current token if it is of the given type
+	private boolean skip(QueryTokenizer.Token token) throws DatabaseException {
+		if (this.tokenizer.getToken() != token) {
+			return false;
+		}
+		this.tokenizer.next();
+		return true;
+	}
+
+	/**
+	 * Return the position in CLAUSES of the keyword at the current token
+	 * @return Position, or -1 if the token is not the keyword of a clause
+	 */
+	private int getClause() {
+		for (int i = 0; i < CLAUSES.length; i++) {
+			if (this.tokenizer.isKeyword(CLAUSES[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private DatabaseException unexpected() {
+		return new DatabaseException("Unexpected " + this.tokenizer.getToken() + " at position " + this.tokenizer.getStart());
+	}
+}
@@ -3,26 +3,67 @@
  */
 package sjdb;
 import java.io.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author nmg
  *
  */
 public class SJDB {
+	/**
+	 * Capacity, in characters of output, of the cache of the outputs of
+	 * the queries planned with --batch or --server
+	 */
+	public static final long RESULT_CACHE_CAPACITY = 16 * 1024 * 1024;
 
 	/**
+	 * Usage: SJDB <catalogue file> [--server <port> |
+	 *            --batch [--parallel [<threads>]] [<file or directory> ...]]
+	 * 
+	 * The catalogue file may be in the text format read by CatalogueParser
+	 * or in the binary format written by CatalogueConverter.
+	 * 
+	 * By default, a single query is read from stdin. With --server, the
+	 * catalogue is loaded once and queries are served on a local socket.
+	 * With --server and --batch, the output of a query whose canonical
+	 * plan is equal to one already planned is taken from a ResultCache.
+	 * With --batch, a stream of queries separated by empty lines or ";" is
+	 * read from the given files (and the files in the given directories, by
+	 * name), or from stdin, and the output of each is printed in turn. The
+	 * optimised plans are added to a BatchOptimiser, and the output of a
+	 * query is followed by a line for each of the largest sub-plans of its
+	 * plan that the plan of an earlier query computes too:
+	 * SHARED WITH QUERY <number>: <sub-plan>
 	 * @param args
 	 */
 	public static void main(String[] args) throws Exception {
 		// read serialised catalogue from file and parse
 		String catFile = args[0];
-		Catalogue cat = new Catalogue();
-		Inspector inspector = new Inspector();
-		CatalogueParser catParser = new CatalogueParser(catFile, cat);
-		catParser.parse();
+		Catalogue cat;
+		if (BinaryCatalogue.isBinary(catFile)) {
+			// map the binary catalogue, whose entries are loaded when first looked up
+			cat = BinaryCatalogue.load(catFile);
+		} else {
+			cat = new Catalogue();
+			CatalogueParser catParser = new CatalogueParser(catFile, cat);
+			catParser.parse();
+		}
+		
+		if (args.length > 2 && args[1].equals("--server")) {
+			new QueryServer(cat, Integer.parseInt(args[2])).serve();
+			return;
+		}
+		if (args.length > 1 && args[1].equals("--batch")) {
+			runBatch(cat, Arrays.asList(args).subList(2, args.length));
+			return;
+		}
 		
 		// read stdin, parse, and build canonical query plan
 		QueryParser queryParser = new QueryParser(cat, new InputStreamReader(System.in));
@@ -30,18 +71,183 @@ public class SJDB {
 
 		//Operator plan = query(cat);
 
+		explain(cat, plan, System.out);
+	}
+
+	/**
+	 * Optimise a stream of queries, in parallel if --parallel is given,
+	 * and print their outputs, and the sub-plans they share, in the order
+	 * the queries were read
+	 * @param cat
+	 * @param args Batch arguments
+	 */
+	private static void runBatch(Catalogue cat, List<String> args) throws Exception {
+		int threads = 1;
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < args.size(); i++) {
+			if (args.get(i).equals("--parallel")) {
+				threads = Runtime.getRuntime().availableProcessors();
+				if (i + 1 < args.size() && args.get(i + 1).matches("\\d+")) {
+					threads = Integer.parseInt(args.get(++i));
+				}
+			} else if (new File(args.get(i)).isDirectory()) {
+				File[] dirFiles = new File(args.get(i)).listFiles(File::isFile);
+				Arrays.sort(dirFiles);
+				files.addAll(Arrays.asList(dirFiles));
+			} else {
+				files.add(new File(args.get(i)));
+			}
+		}
+		
+		List<Reader> inputs = new ArrayList<Reader>();
+		if (files.isEmpty()) {
+			inputs.add(new InputStreamReader(System.in));
+		}
+		for (File file : files) {
+			inputs.add(new FileReader(file));
+		}
+		
+		// Queries are optimised while later ones are read; a bounded number are in flight at once,
+		// and their outputs are printed, and their plans added to the batch, in order as soon as each is ready
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ThreadLocal<ReusableQueryParser> parsers = ThreadLocal.withInitial(() -> new ReusableQueryParser(cat));
+		Deque<Future<Explanation>> pending = new ArrayDeque<Future<Explanation>>();
+		ResultCache<Explanation> results = new ResultCache<Explanation>(RESULT_CACHE_CAPACITY);
+		BatchOptimiser batch = new BatchOptimiser(cat);
+		// The number of the query of each plan in the batch, as queries that fail have none
+		List<Integer> queryNumbers = new ArrayList<Integer>();
+		int printed = 0;
+		try {
+			for (Reader input : inputs) {
+				try (BufferedReader in = new BufferedReader(input)) {
+					String query;
+					while ((query = QueryParser.readQuery(in)) != null) {
+						final String next = query;
+						pending.add(pool.submit(() -> explain(parsers.get(), next, results)));
+						if (pending.size() >= 2 * threads) {
+							printBatchOutput(pending.remove().get(), ++printed, batch, queryNumbers);
+						}
+					}
+				}
+			}
+			while (!pending.isEmpty()) {
+				printBatchOutput(pending.remove().get(), ++printed, batch, queryNumbers);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Print the output of the next query of a batch, add its optimised
+	 * plan to the batch, and print the sub-plans that it shares with the
+	 * plans of earlier queries
+	 * @param explanation
+	 * @param queryNumber Number of the query, counting from 1
+	 * @param batch
+	 * @param queryNumbers Query number, counting from 1, of each plan in the batch
+	 */
+	private static void printBatchOutput(Explanation explanation, int queryNumber, BatchOptimiser batch,
+			List<Integer> queryNumbers) {
+		System.out.println(explanation.text);
+		if (explanation.plan == null) {
+			return;
+		}
+		batch.add(explanation.plan);
+		queryNumbers.add(queryNumber);
+		for (Operator shared : batch.getReusedOperators()) {
+			System.out.println("SHARED WITH QUERY " + queryNumbers.get(batch.getPlanNumber(shared)) + ": " + shared);
+		}
+	}
+	
+	/**
+	 * The printed output of a query, and its optimised plan, or null if
+	 * the query could not be planned
+	 */
+	static class Explanation {
+		String text;
+		Operator plan;
+
+		Explanation(String text, Operator plan) {
+			this.text = text;
+			this.plan = plan;
+		}
+	}
+
+	/**
+	 * Parse a query and return the output of explain(ReusableQueryParser,
+	 * CharSequence, PrintStream) for it, taken from the cache if a query
+	 * with an equal canonical plan has been planned already. Queries that
+	 * cannot be planned are not cached.
+	 * @param parser Parser for the catalogue the query is over
+	 * @param query
+	 * @param results Outputs of the queries already planned, sized by
+	 * their length
+	 * @return Output and optimised plan
+	 */
+	static Explanation explain(ReusableQueryParser parser, CharSequence query, ResultCache<Explanation> results)
+			throws UnsupportedEncodingException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(buffer, false, "UTF-8");
+		try {
+			Operator plan = parser.parse(query);
+			Explanation explanation = results.get(plan);
+			if (explanation == null) {
+				Operator optPlan = explain(parser.getCatalogue(), plan, out);
+				out.flush();
+				explanation = new Explanation(buffer.toString("UTF-8"), optPlan);
+				results.put(plan, explanation, explanation.text.length());
+			}
+			return explanation;
+		} catch (Exception e) {
+			out.println("ERROR " + e);
+		}
+		out.flush();
+		return new Explanation(buffer.toString("UTF-8"), null);
+	}
+
+	/**
+	 * Parse a query and print its plans as explain(Catalogue, Operator,
+	 * PrintStream) does, or print an ERROR line if that fails
+	 * @param parser Parser for the catalogue the query is over
+	 * @param query
+	 * @param out
+	 * @return Optimised plan, or null if the query could not be planned
+	 */
+	public static Operator explain(ReusableQueryParser parser, CharSequence query, PrintStream out) {
+		try {
+			Operator plan = parser.parse(query);
+			return explain(parser.getCatalogue(), plan, out);
+		} catch (Exception e) {
+			out.println("ERROR " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Print the canonical plan and the optimised plan, with their
+	 * estimated statistics, to the given stream
+	 * @param cat
+	 * @param plan Canonical plan
+	 * @param out
+	 * @return Optimised plan
+	 */
+	public static Operator explain(Catalogue cat, Operator plan, PrintStream out) {
+		Inspector inspector = new Inspector(out);
+
 		// create estimator visitor and apply it to canonical plan
-		Estimator est = new Estimator();
+		Estimator est = new Estimator(cat);
 		plan.accept(est);
 		plan.accept(inspector);
 
-		System.out.println("\n");
+		out.println("\n");
 
 		// create optimised plan
 		Optimiser opt = new Optimiser(cat);
 		Operator optPlan = opt.optimise(plan);
 		optPlan.accept(est);
 		optPlan.accept(inspector);
+		return optPlan;
 	}
 
 	public static Catalogue createCatalogue() {
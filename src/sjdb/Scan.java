@@ -13,18 +13,33 @@ public class Scan extends Operator {
 	 * The named relation to be scanned
 	 */
 	private NamedRelation relation;
+	/**
+	 * The qualifier of the attributes output by the scan, or null
+	 */
+	private String alias;
 	
 	/**
 	 * Create a new scan of a given named relation
 	 * @param relation Named relation to be scanned
 	 */
 	public Scan(NamedRelation relation) {
+		this(relation, null);
+	}
+	
+	/**
+	 * Create a new scan of a given named relation, whose attributes are
+	 * qualified by an alias (which may be the name of the relation)
+	 * @param relation Named relation to be scanned
+	 * @param alias Qualifier of the output attributes, or null for none
+	 */
+	public Scan(NamedRelation relation, String alias) {
 		this.relation = relation;
+		this.alias = alias;
 		this.output = new Relation(relation.getTupleCount());
 		Iterator<Attribute> iter = relation.getAttributes().iterator();
 		
 		while (iter.hasNext()) {
-			this.output.addAttribute(new Attribute(iter.next()));
+			this.output.addAttribute(getOutputAttribute(iter.next()));
 		}
 	}
 
@@ -45,12 +60,32 @@ public class Scan extends Operator {
 		return this.relation;
 	}
 	
+	/**
+	 * Return the qualifier of the attributes output by the scan
+	 * @return Alias, or null if the attributes are not qualified
+	 */
+	public String getAlias() {
+		return this.alias;
+	}
+	
+	/**
+	 * Return an attribute of the named relation as it is output by the scan
+	 * @param attribute Attribute of the named relation
+	 * @return Attribute, qualified by the alias if there is one
+	 */
+	public Attribute getOutputAttribute(Attribute attribute) {
+		return this.alias == null ? new Attribute(attribute) : new Attribute(attribute, this.alias);
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	@Override
 	public String toString() {
-		return this.relation.toString();
+		if (this.alias == null || this.alias.equals(this.relation.toString())) {
+			return this.relation.toString();
+		}
+		return this.relation.toString() + " " + this.alias;
 	}
 	
 	/* (non-Javadoc)
@@ -0,0 +1,43 @@
+package sjdb;
+
+/**
+ * This class represents a semi-join operator, which outputs each tuple
+ * of its left child for which at least one tuple of its right child
+ * satisfies the join predicate. Only the attributes of the left child
+ * appear in the output, and no left tuple is output more than once.
+ */
+public class SemiJoin extends BinaryOperator {
+	private Predicate predicate;
+	/**
+	 * Create a new semi-join operator.
+	 * @param left Left child operator, whose tuples are output
+	 * @param right Right child operator, which only filters the left
+	 * @param predicate Join predicate
+	 */
+	public SemiJoin(Operator left, Operator right, Predicate predicate) {
+		super(left, right);
+		this.predicate = predicate;
+	}
+
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+	
+	/* (non-Javadoc)
+	 * @see sjdb.BinaryOperator#accept(sjdb.OperatorVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + this.getLeft().toString() + ") SEMIJOIN [" + 
+				this.getPredicate().toString() +
+				"] (" + this.getRight().toString() + ")";
+	}
+	
+}
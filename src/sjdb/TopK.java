@@ -0,0 +1,83 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class represents a top-k operator, which outputs the first
+ * k tuples of its input in the order given by a list of attributes.
+ * The tuples are kept in a heap bounded at k entries, so the input
+ * is never fully sorted.
+ *
+ * Without order attributes, any k tuples are output (LIMIT k); without
+ * a limit, all tuples are output in order (ORDER BY).
+ */
+public class TopK extends UnaryOperator {
+	/**
+	 * Limit used when all tuples are to be output
+	 */
+	public static final int UNLIMITED = -1;
+
+	private List<Attribute> orderAttributes;
+	private List<Boolean> descending;
+	private int limit;
+
+	/**
+	 * Create a new top-k operator.
+	 * @param input Child operator
+	 * @param orderAttributes Attributes to order on, most significant first
+	 * @param descending Whether each order attribute is in descending order
+	 * @param limit Number of tuples to output, or UNLIMITED
+	 */
+	public TopK(Operator input, List<Attribute> orderAttributes, List<Boolean> descending, int limit) {
+		super(input);
+		this.orderAttributes = orderAttributes;
+		this.descending = descending;
+		this.limit = limit;
+	}
+
+	/**
+	 * Return the list of attributes ordered on by this operator
+	 * @return Order attributes
+	 */
+	public List<Attribute> getOrderAttributes() {
+		return this.orderAttributes;
+	}
+
+	/**
+	 * Return whether each order attribute is in descending order
+	 * @return Descending flags, one per order attribute
+	 */
+	public List<Boolean> getDescending() {
+		return this.descending;
+	}
+
+	/**
+	 * Return the number of tuples output by this operator
+	 * @return Limit, or UNLIMITED
+	 */
+	public int getLimit() {
+		return this.limit;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#accept(sjdb.OperatorVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String ret = "TOPK [" + (this.limit == UNLIMITED ? "ALL" : Integer.toString(this.limit)) + "] [";
+		for (int i = 0; i < this.orderAttributes.size(); i++) {
+			ret += (i > 0 ? "," : "") + this.orderAttributes.get(i).toString()
+					+ (this.descending.get(i) ? " DESC" : "");
+		}
+		ret += "] (" + getInput().toString() + ")";
+
+		return ret;
+	}
+}
@@ -0,0 +1,53 @@
+package sjdb;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * Runs the tests: every public static method of a test class whose name
+ * starts with "test" and which takes no arguments. The tests are run
+ * from the project directory, as some of them read files under data/.
+ *
+ * Usage: AllTests [<test class name> ...]
+ */
+public class AllTests {
+	private static final Class<?>[] TEST_CLASSES = {
+		BatchOptimiserTest.class,
+		BinaryCatalogueTest.class,
+		EstimatorTest.class,
+		OptimiserTest.class,
+		ParserTest.class,
+		ResultCacheTest.class
+	};
+
+	public static void main(String[] args) throws Exception {
+		int run = 0;
+		int failed = 0;
+		for (Class<?> testClass : TEST_CLASSES) {
+			if (args.length > 0 && !Arrays.asList(args).contains(testClass.getSimpleName())) {
+				continue;
+			}
+			for (Method method : testClass.getMethods()) {
+				if (!method.getName().startsWith("test") || method.getParameterCount() != 0
+						|| !Modifier.isStatic(method.getModifiers())) {
+					continue;
+				}
+				run++;
+				try {
+					method.invoke(null);
+				} catch (InvocationTargetException e) {
+					failed++;
+					String name = testClass.getSimpleName() + "." + method.getName();
+					System.out.println("FAIL " + name + ": " + e.getCause());
+					e.getCause().printStackTrace(System.out);
+				}
+			}
+		}
+		System.out.println(run + " tests, " + failed + " failed");
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+}
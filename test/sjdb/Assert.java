@@ -0,0 +1,57 @@
+package sjdb;
+
+import java.util.Objects;
+
+/**
+ * This class holds the checks made by the tests, each of which throws
+ * an AssertionError if it does not hold.
+ */
+public class Assert {
+
+	/**
+	 * Check that two values are equal
+	 * @param expected
+	 * @param actual
+	 */
+	public static void assertEquals(Object expected, Object actual) {
+		if (!Objects.equals(expected, actual)) {
+			throw new AssertionError("expected <" + expected + "> but was <" + actual + ">");
+		}
+	}
+
+	/**
+	 * Check that a condition holds
+	 * @param message Description of the condition
+	 * @param condition
+	 */
+	public static void assertTrue(String message, boolean condition) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * Check that a piece of code throws an exception of the given type
+	 * @param type Expected type of exception
+	 * @param code
+	 * @return The exception thrown
+	 */
+	public static <T extends Throwable> T assertThrows(Class<T> type, Code code) {
+		try {
+			code.run();
+		} catch (Throwable e) {
+			if (type.isInstance(e)) {
+				return type.cast(e);
+			}
+			throw new AssertionError("expected " + type.getSimpleName() + " but was " + e, e);
+		}
+		throw new AssertionError("expected " + type.getSimpleName() + " but nothing was thrown");
+	}
+
+	/**
+	 * Code that may throw any exception
+	 */
+	public interface Code {
+		void run() throws Exception;
+	}
+}
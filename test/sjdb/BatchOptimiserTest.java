@@ -0,0 +1,106 @@
+package sjdb;
+
+import static sjdb.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests of PlanKey and of the sub-plans shared by BatchOptimiser.
+ */
+public class BatchOptimiserTest {
+	private static final String MANAGERS =
+			"SELECT persname, deptname FROM Department, Person WHERE manager=persid, deptname=\"X\"";
+	private static final String MANAGER_NAMES =
+			"SELECT persname FROM Department, Person WHERE manager=persid, deptname=\"X\"";
+
+	public static void testPlansOfTheSameQueryHaveEqualKeys() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		PlanKey key = PlanKey.of(TestCatalogues.optimise(catalogue, MANAGERS));
+		PlanKey other = PlanKey.of(TestCatalogues.optimise(catalogue, MANAGERS));
+		assertTrue("same query", key.equals(other));
+		assertEquals(key.hashCode(), other.hashCode());
+	}
+
+	public static void testKeysDifferByConstantAndAlias() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		PlanKey key = PlanKey.of(TestCatalogues.plan(catalogue, "SELECT * FROM Person WHERE age=\"30\""));
+		assertTrue("constant", !key.equals(PlanKey.of(
+				TestCatalogues.plan(catalogue, "SELECT * FROM Person WHERE age=\"31\""))));
+		assertTrue("alias", !key.equals(PlanKey.of(
+				TestCatalogues.plan(catalogue, "SELECT * FROM Person p WHERE p.age=\"30\""))));
+		assertTrue("in-list order", PlanKey.of(
+				TestCatalogues.plan(catalogue, "SELECT * FROM Person WHERE age IN (\"1\",\"2\")")).equals(PlanKey.of(
+				TestCatalogues.plan(catalogue, "SELECT * FROM Person WHERE age IN (\"2\",\"1\")"))));
+	}
+
+	// A view Scan outputs its attributes named as the query reading it does, so such Scans differ by those names
+	public static void testKeysOfViewScansDifferByAttributeNames() throws Exception {
+		Catalogue catalogue = TestCatalogues.dataWith("VIEW:PP:SELECT * FROM Person a, Person b WHERE a.persid=b.age");
+		Operator plan = TestCatalogues.optimise(catalogue, "SELECT * FROM Person a, Person b WHERE a.persid=b.age");
+		Operator renamed = TestCatalogues.optimise(catalogue, "SELECT * FROM Person x, Person y WHERE x.persid=y.age");
+		assertEquals("PP", renamed.toString());
+		assertTrue("renamed view", !PlanKey.of(plan).equals(PlanKey.of(renamed)));
+	}
+
+	public static void testCommonSubPlanIsComputedOnce() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		BatchOptimiser batch = new BatchOptimiser(catalogue);
+		Operator first = batch.add(TestCatalogues.optimise(catalogue, MANAGERS));
+		assertEquals(0, batch.getReusedOperators().size());
+
+		Operator second = batch.add(TestCatalogues.optimise(catalogue, MANAGER_NAMES));
+		List<Operator> reused = batch.getReusedOperators();
+		assertEquals("[SELECT [deptname=\"X\"] (PROJECT [deptname,manager] (Department)), "
+				+ "PROJECT [persid,persname] (Person)]", reused.toString());
+		for (Operator operator : reused) {
+			assertEquals(0, batch.getPlanNumber(operator));
+			assertTrue(operator.toString(), contains(first, operator) && contains(second, operator));
+		}
+	}
+
+	public static void testRepeatedQueryReusesTheWholePlan() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		BatchOptimiser batch = new BatchOptimiser(catalogue);
+		List<Operator> plans = batch.optimise(Arrays.asList(
+				TestCatalogues.plan(catalogue, MANAGERS), TestCatalogues.plan(catalogue, MANAGER_NAMES),
+				TestCatalogues.plan(catalogue, MANAGERS)));
+		assertTrue("repeated plan", plans.get(2) == plans.get(0));
+		assertEquals(Arrays.asList(plans.get(0)), batch.getReusedOperators());
+	}
+
+	public static void testAddedPlanIsNotChanged() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		BatchOptimiser batch = new BatchOptimiser(catalogue);
+		batch.add(TestCatalogues.optimise(catalogue, MANAGERS));
+		Operator plan = TestCatalogues.optimise(catalogue, MANAGER_NAMES);
+		String before = plan.toString();
+		Operator shared = batch.add(plan);
+		assertEquals(before, plan.toString());
+		assertEquals(before, shared.toString());
+		assertTrue("rebuilt root", shared != plan);
+		assertEquals(plan.getOutput().getTupleCount(), shared.getOutput().getTupleCount());
+		assertTrue("own inputs", !contains(plan, batch.getReusedOperators().get(0)));
+	}
+
+	/**
+	 * Return whether an operator is part of a plan
+	 * @param plan
+	 * @param operator
+	 * @return True if the plan reaches the operator
+	 */
+	private static boolean contains(Operator plan, Operator operator) {
+		if (plan == operator) {
+			return true;
+		}
+		if (plan instanceof Scan) {
+			return false;
+		}
+		for (Operator input : plan.getInputs()) {
+			if (contains(input, operator)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
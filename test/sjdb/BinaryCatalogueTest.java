@@ -0,0 +1,140 @@
+package sjdb;
+
+import static sjdb.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests of BinaryCatalogue: a catalogue written to the binary format and
+ * loaded from it must answer every lookup as the text catalogue does.
+ */
+public class BinaryCatalogueTest {
+	// Attribute names that are shared (persname, in), that share prefixes, and a relation without attributes
+	private static final String[] LINES = {
+		"Other:10:persname,3:person,2:persid2,4:in,1",
+		"Empty:7",
+		"Zeta:3:in,3",
+		"INDEX:Other:person:HASH",
+		"INDEX:Zeta:in:BTREE",
+		"KEY:Other:person",
+		"FOREIGNKEY:Other:persid2:Person:persid",
+		"FOREIGNKEY:Zeta:in:Other:person",
+		"VIEW:PP:SELECT * FROM Person a, Person b WHERE a.persid=b.age"
+	};
+
+	public static void testEveryLookupMatchesTheTextCatalogue() throws Exception {
+		Catalogue text = TestCatalogues.dataWith(LINES);
+		Catalogue binary = convert(text);
+
+		for (NamedRelation reln : text.getRelations()) {
+			String name = reln.toString();
+			assertEquals(reln.render(), binary.getRelation(name).render());
+			if (name.equals("PP")) {
+				continue;
+			}
+			assertEquals(reln.getIndexes().toString(), binary.getRelation(name).getIndexes().toString());
+			assertEquals(reln.getKeys().toString(), binary.getRelation(name).getKeys().toString());
+			for (Attribute attr : reln.getAttributes()) {
+				String qualified = name + "." + attr.getName();
+				assertEquals(text.getAttribute(qualified).getValueCount(),
+						binary.getAttribute(qualified).getValueCount());
+				assertEquals(name, binary.getAttribute(qualified).getRelation());
+				assertEquals(String.valueOf(text.getForeignKey(text.getAttribute(qualified))),
+						String.valueOf(binary.getForeignKey(binary.getAttribute(qualified))));
+
+				String bare = attr.getName();
+				if (text.isAmbiguous(bare)) {
+					assertTrue(bare, binary.isAmbiguous(bare));
+					assertThrows(DatabaseException.class, () -> text.getAttribute(bare));
+					assertThrows(DatabaseException.class, () -> binary.getAttribute(bare));
+				} else {
+					assertTrue(bare, !binary.isAmbiguous(bare));
+					assertEquals(text.getAttribute(bare).getValueCount(), binary.getAttribute(bare).getValueCount());
+					assertEquals(text.getAttribute(bare).getRelation(), binary.getAttribute(bare).getRelation());
+				}
+			}
+		}
+		assertTrue("persname", binary.isAmbiguous("persname"));
+		assertTrue("in", binary.isAmbiguous("in"));
+		assertEquals("persid2->Person.persid",
+				binary.getForeignKey(binary.getAttribute("Other.persid2")).toString());
+		assertEquals("in->Other.person", binary.getForeignKey(binary.getAttribute("Zeta.in")).toString());
+
+		assertThrows(DatabaseException.class, () -> binary.getRelation("Nope"));
+		assertThrows(DatabaseException.class, () -> binary.getAttribute("Person.nope"));
+		assertThrows(DatabaseException.class, () -> binary.getAttribute("Nope.persid"));
+		assertThrows(DatabaseException.class, () -> binary.getAttribute("nope"));
+	}
+
+	public static void testPlansMatchTheTextCatalogue() throws Exception {
+		Catalogue text = TestCatalogues.dataWith(LINES);
+		Catalogue binary = convert(text);
+		assertEquals(1, binary.getViews().size());
+		assertEquals(text.getViews().get(0).getQuery(), binary.getViews().get(0).getQuery());
+
+		List<String> queries = new ArrayList<String>();
+		for (int i = 1; i <= 5; i++) {
+			queries.add(String.join(" ", Files.readAllLines(new File("data/q" + i + ".txt").toPath())));
+		}
+		queries.add("SELECT * FROM Person x, Person y WHERE x.persid=y.age");
+		queries.add("SELECT person, COUNT(*) FROM Other, Zeta WHERE Zeta.in=person GROUP BY person");
+		for (String query : queries) {
+			Operator expected = TestCatalogues.optimise(text, query);
+			Operator plan = TestCatalogues.optimise(binary, query);
+			assertEquals(expected.toString(), plan.toString());
+			assertEquals(expected.getOutput().render(), plan.getOutput().render());
+		}
+	}
+
+	public static void testBinaryFileIsSmallerThanTheText() throws Exception {
+		File text = new File(TestCatalogues.DATA);
+		assertTrue("example catalogue", convertFile(text).length() < text.length());
+
+		// Many relations with many attributes, whose names share their prefixes
+		List<String> lines = new ArrayList<String>();
+		for (int r = 0; r < 2000; r++) {
+			StringBuilder line = new StringBuilder("R" + r + ":1000");
+			for (int a = 0; a < 15; a++) {
+				line.append(":r" + r + "_a" + a + "," + (10 + a));
+			}
+			lines.add(line.toString());
+		}
+		lines.add("KEY:R2:r2_a0");
+		lines.add("FOREIGNKEY:R1:r1_a0:R2:r2_a0");
+		File large = TestCatalogues.write(lines.toArray(new String[lines.size()]));
+		File binary = convertFile(large);
+		assertTrue(binary.length() + " < " + large.length(), binary.length() < large.length());
+
+		Catalogue catalogue = BinaryCatalogue.load(binary.getPath());
+		assertEquals(24, catalogue.getAttribute("r1999_a14").getValueCount());
+		assertEquals("r1_a0->R2.r2_a0", catalogue.getForeignKey(catalogue.getAttribute("R1.r1_a0")).toString());
+	}
+
+	/**
+	 * Write a catalogue to a temporary binary catalogue file, and load it
+	 * @param catalogue
+	 * @return Loaded catalogue
+	 */
+	private static Catalogue convert(Catalogue catalogue) throws Exception {
+		File file = File.createTempFile("sjdb", ".bin");
+		file.deleteOnExit();
+		BinaryCatalogue.write(catalogue, file.getPath());
+		assertTrue(file.getPath(), BinaryCatalogue.isBinary(file.getPath()));
+		return BinaryCatalogue.load(file.getPath());
+	}
+
+	/**
+	 * Convert a text catalogue file to a temporary binary catalogue file
+	 * @param text
+	 * @return Binary catalogue file
+	 */
+	private static File convertFile(File text) throws Exception {
+		File file = File.createTempFile("sjdb", ".bin");
+		file.deleteOnExit();
+		BinaryCatalogue.write(TestCatalogues.read(text.getPath()), file.getPath());
+		return file;
+	}
+}
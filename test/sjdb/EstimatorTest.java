@@ -0,0 +1,85 @@
+package sjdb;
+
+import static sjdb.Assert.*;
+
+/**
+ * Tests of the statistics estimated by Estimator.
+ */
+public class EstimatorTest {
+
+	// The estimator materializes no tuples: each operator's output holds one entry per attribute,
+	// whatever the number of tuples it stands for
+	public static void testIntermediateResultsHoldOnlyStatistics() throws Exception {
+		Catalogue catalogue = new Catalogue();
+		catalogue.createRelation("A", 40000);
+		catalogue.createAttribute("A", "a1", 40000);
+		catalogue.createAttribute("A", "a2", 100);
+		catalogue.createRelation("B", 50000);
+		catalogue.createAttribute("B", "b1", 50000);
+		catalogue.createAttribute("B", "b2", 100);
+		catalogue.createAttribute("B", "b3", 10);
+
+		Operator plan = new Product(new Scan(catalogue.getRelation("A")), new Scan(catalogue.getRelation("B")));
+		plan.accept(new Estimator(catalogue));
+		assertEquals(2000000000, plan.getOutput().getTupleCount());
+		assertEquals(5, plan.getOutput().getAttributes().size());
+		assertEquals(10, plan.getOutput().getAttribute(new Attribute("b3")).getValueCount());
+	}
+
+	// Each left tuple is kept at most once, if its value is among the distinct values left on the right
+	public static void testSemiJoinKeepsTheLeftTuplesThatMatch() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		Operator right = new Select(new Scan(catalogue.getRelation("Department")),
+				new Predicate(new Attribute("deptname"), "Research"));
+		SemiJoin plan = new SemiJoin(new Scan(catalogue.getRelation("Project")), right,
+				new Predicate(new Attribute("dept"), new Attribute("deptid")));
+		plan.accept(new Estimator(catalogue));
+
+		// 40 projects over 5 departments, of which one is left
+		assertEquals(8, plan.getOutput().getTupleCount());
+		assertEquals(3, plan.getOutput().getAttributes().size());
+		assertEquals(1, plan.getOutput().getAttribute(new Attribute("dept")).getValueCount());
+	}
+
+	public static void testSemiJoinIsNeverLargerThanItsLeftInput() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		Predicate predicate = new Predicate(new Attribute("manager"), new Attribute("persid"));
+		SemiJoin plan = new SemiJoin(new Scan(catalogue.getRelation("Department")),
+				new Scan(catalogue.getRelation("Person")), predicate);
+		plan.accept(new Estimator(catalogue));
+		assertEquals(5, plan.getOutput().getTupleCount());
+	}
+
+	public static void testAggregateHasOneTuplePerGroup() throws Exception {
+		Operator plan = TestCatalogues.plan(TestCatalogues.data(),
+				"SELECT dept, COUNT(*) FROM Project GROUP BY dept");
+		assertEquals(5, plan.getOutput().getTupleCount());
+		assertEquals(5, plan.getOutput().getAttribute(new Attribute("COUNT(*)")).getValueCount());
+	}
+
+	// The number of groups is the product of the grouping attributes' values, but no more than the input tuples
+	public static void testAggregateHasNoMoreGroupsThanInputTuples() throws Exception {
+		Operator plan = TestCatalogues.plan(TestCatalogues.data(),
+				"SELECT age, COUNT(*) FROM Person GROUP BY age, persname");
+		assertEquals(400, plan.getOutput().getTupleCount());
+		assertEquals(47, plan.getOutput().getAttribute(new Attribute("age")).getValueCount());
+	}
+
+	public static void testAggregateWithoutGroupingHasOneTuple() throws Exception {
+		Operator plan = TestCatalogues.plan(TestCatalogues.data(), "SELECT MAX(age) FROM Person");
+		assertEquals(1, plan.getOutput().getTupleCount());
+		assertEquals(1, plan.getOutput().getAttribute(new Attribute("MAX(age)")).getValueCount());
+	}
+
+	public static void testTopKOutputsAtMostLimitTuples() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		Operator plan = TestCatalogues.plan(catalogue, "SELECT * FROM Person ORDER BY age LIMIT 5");
+		assertEquals(5, plan.getOutput().getTupleCount());
+		assertEquals(5, plan.getOutput().getAttribute(new Attribute("age")).getValueCount());
+
+		plan = TestCatalogues.plan(catalogue, "SELECT * FROM Department LIMIT 50");
+		assertEquals(5, plan.getOutput().getTupleCount());
+		plan = TestCatalogues.plan(catalogue, "SELECT * FROM Person ORDER BY age");
+		assertEquals(400, plan.getOutput().getTupleCount());
+	}
+}
@@ -0,0 +1,153 @@
+package sjdb;
+
+import static sjdb.Assert.*;
+
+import java.util.HashSet;
+
+/**
+ * Tests of the plans built by Optimiser.
+ */
+public class OptimiserTest {
+
+	public static void testScanColumnsArePrunedBelowSelection() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(), "SELECT projname FROM Project WHERE dept=\"3\"");
+		assertEquals("PROJECT [projname] (SELECT [dept=\"3\"] (PROJECT [projname,dept] (Project)))", plan.toString());
+	}
+
+	public static void testScanIsNotPrunedWhenEveryColumnIsRead() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(),
+				"SELECT persname, projname FROM Person, Project WHERE persid=projid, age=\"30\"");
+		assertTrue(plan.toString(), plan.toString().contains("(SELECT [age=\"30\"] (Person))"));
+	}
+
+	public static void testIndexScanAnswersEquality() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(), "SELECT * FROM Person WHERE persname=\"Smith\"");
+		assertEquals("INDEXSCAN HASH [persname=\"Smith\"] (Person)", plan.toString());
+	}
+
+	public static void testIndexScanAnswersInList() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(),
+				"SELECT * FROM Person WHERE persid IN (\"1\",\"2\")");
+		assertEquals("INDEXSCAN BTREE [persid IN (\"1\",\"2\")] (Person)", plan.toString());
+	}
+
+	public static void testUnindexedPredicateStaysASelect() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(), "SELECT * FROM Person WHERE age=\"30\"");
+		assertEquals("SELECT [age=\"30\"] (Person)", plan.toString());
+	}
+
+	// The lookup is chosen from every predicate over the Scan, whatever their order in the query
+	public static void testIndexScanIsChosenFromTheWholeSelectChain() throws Exception {
+		String expected = "SELECT [persname=\"Smith\"] (INDEXSCAN BTREE [persid=\"3\"] (Person))";
+		assertEquals(expected, TestCatalogues.optimise(TestCatalogues.data(),
+				"SELECT * FROM Person WHERE persname=\"Smith\", persid=\"3\"").toString());
+		assertEquals(expected, TestCatalogues.optimise(TestCatalogues.data(),
+				"SELECT * FROM Person WHERE persid=\"3\", persname=\"Smith\"").toString());
+	}
+
+	public static void testIndexJoinProbesTheIndexedSide() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(),
+				"SELECT persname, deptname FROM Department, Person WHERE manager=persid, deptname=\"X\"");
+		assertTrue(plan.toString(),
+				plan.toString().contains("INDEXJOIN BTREE [manager=persid] (PROJECT [persid,persname] (Person))"));
+	}
+
+	public static void testSemiJoinWhenTheRightSideOnlyFilters() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(),
+				"SELECT projname FROM Project, Department WHERE dept=deptid, deptname=\"Research\"");
+		assertTrue(plan.toString(), plan.toString().contains(" SEMIJOIN [dept=deptid] "));
+		assertEquals(8, plan.getOutput().getTupleCount());
+	}
+
+	// Department.manager is not a key, so one person may match several departments, and must be output once for each
+	public static void testJoinIsKeptWhenTheRightAttributeIsNotUnique() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(),
+				"SELECT persname FROM Person, Department WHERE persid=manager");
+		assertTrue(plan.toString(), plan.toString().contains(" JOIN [persid=manager] "));
+		assertTrue(plan.toString(), !plan.toString().contains("SEMIJOIN"));
+	}
+
+	// Once the join is eliminated, the TopK pushed below it is the same as the one above it, which is dropped
+	public static void testTopKIsNotRepeatedAfterJoinElimination() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(),
+				"SELECT projname FROM Project, Department WHERE dept=deptid ORDER BY projname LIMIT 5");
+		assertEquals("PROJECT [projname] (TOPK [5] [projname] (PROJECT [projname] (Project)))", plan.toString());
+	}
+
+	public static void testOrderByAggregateIsComputedBelowTheTopK() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.data(),
+				"SELECT dept FROM Project GROUP BY dept ORDER BY COUNT(*) DESC LIMIT 2");
+		assertEquals("PROJECT [dept] (TOPK [2] [COUNT(*) DESC] "
+				+ "(AGGREGATE [dept] [COUNT(*)] (PROJECT [dept] (Project))))", plan.toString());
+		assertEquals(2, plan.getOutput().getTupleCount());
+	}
+
+	private static final String DEPT_PROJECTS = "VIEW:DeptProjects:SELECT projname, deptname, dept, deptid "
+			+ "FROM Project, Department WHERE dept=deptid, deptname IN (\"Sales\",\"HR\")";
+
+	public static void testViewAnswersQuery() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.dataWith(DEPT_PROJECTS),
+				"SELECT projname FROM Project, Department WHERE dept=deptid, deptname=\"Sales\"");
+		assertEquals("PROJECT [projname] (SELECT [deptname=\"Sales\"] (PROJECT [projname,deptname] (DeptProjects)))",
+				plan.toString());
+	}
+
+	// The view Scan outputs the attributes as the query qualifies them, for the operators above it
+	public static void testViewAnswersAliasedQuery() throws Exception {
+		Operator plan = TestCatalogues.optimise(TestCatalogues.dataWith(DEPT_PROJECTS),
+				"SELECT p.projname FROM Project p, Department d WHERE p.dept=d.deptid, d.deptname=\"Sales\"");
+		assertEquals("PROJECT [p.projname] (SELECT [d.deptname=\"Sales\"] "
+				+ "(PROJECT [p.projname,d.deptname] (DeptProjects)))", plan.toString());
+		assertEquals("[p.projname]", plan.getOutput().getAttributes().toString());
+	}
+
+	public static void testViewAnswersAliasedAggregateQuery() throws Exception {
+		Catalogue catalogue = TestCatalogues.dataWith(DEPT_PROJECTS);
+		String query = "SELECT d.deptname, COUNT(*) FROM Project p, Department d "
+				+ "WHERE p.dept=d.deptid, d.deptname IN (\"Sales\",\"HR\") GROUP BY d.deptname";
+		Operator plan = TestCatalogues.optimise(catalogue, query);
+		assertEquals("PROJECT [d.deptname,COUNT(*)] (AGGREGATE [d.deptname] [COUNT(*)] "
+				+ "(PROJECT [d.deptname] (DeptProjects)))", plan.toString());
+		assertEquals(TestCatalogues.plan(catalogue, query).getOutput().render(), plan.getOutput().render());
+	}
+
+	private static final String PP = "VIEW:PP:SELECT * FROM Person a, Person b WHERE a.persid=b.age";
+
+	// Queries and views pair their scans of a relation by relation, not by alias
+	public static void testSelfJoinViewMatchesWhateverTheAliases() throws Exception {
+		Catalogue catalogue = TestCatalogues.dataWith(PP);
+		String[] queries = {
+			"SELECT * FROM Person a, Person b WHERE a.persid=b.age",
+			"SELECT * FROM Person x, Person y WHERE x.persid=y.age",
+			"SELECT * FROM Person b, Person a WHERE b.persid=a.age",
+			"SELECT * FROM Person a, Person b WHERE a.age=b.persid"
+		};
+		for (String query : queries) {
+			Operator canonical = TestCatalogues.plan(catalogue, query);
+			Operator plan = TestCatalogues.optimise(catalogue, query);
+			assertTrue(query + " -> " + plan, plan.toString().equals("PP"));
+			assertEquals(new HashSet<Attribute>(canonical.getOutput().getAttributes()),
+					new HashSet<Attribute>(plan.getOutput().getAttributes()));
+			assertEquals(canonical.getOutput().getTupleCount(), plan.getOutput().getTupleCount());
+		}
+
+		Operator plan = TestCatalogues.optimise(catalogue,
+				"SELECT y.persname FROM Person x, Person y WHERE y.persid=x.age, x.persname=\"Smith\"");
+		assertEquals("PROJECT [y.persname] (SELECT [x.persname=\"Smith\"] (PROJECT [y.persname,x.persname] (PP)))",
+				plan.toString());
+	}
+
+	public static void testSelfJoinViewDoesNotMatchOtherJoins() throws Exception {
+		Catalogue catalogue = TestCatalogues.dataWith(PP);
+		String[] queries = {
+			"SELECT * FROM Person a, Person b WHERE a.persid=b.persid",
+			"SELECT * FROM Person a, Person b WHERE a.age=b.age",
+			"SELECT * FROM Person WHERE persid=age",
+			"SELECT * FROM Person a, Person b, Person c WHERE a.persid=b.age, b.persid=c.age"
+		};
+		for (String query : queries) {
+			String plan = TestCatalogues.optimise(catalogue, query).toString();
+			assertTrue(query + " -> " + plan, !plan.contains("PP"));
+		}
+	}
+}
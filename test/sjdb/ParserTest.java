@@ -0,0 +1,125 @@
+package sjdb;
+
+import static sjdb.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests of the plans built by QueryParser and ReusableQueryParser.
+ */
+public class ParserTest {
+
+	public static void testStarIsOnlyAnArgumentOfCount() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		for (String function : new String[] {"SUM", "MIN", "MAX", "AVG"}) {
+			assertThrows(DatabaseException.class,
+					() -> new ReusableQueryParser(catalogue).parse("SELECT " + function + "(*) FROM Person"));
+			assertThrows(DatabaseException.class,
+					() -> TestCatalogues.parseLines(catalogue, "SELECT " + function + "(*)", "FROM Person"));
+		}
+
+		String expected = "PROJECT [COUNT(*)] (AGGREGATE [] [COUNT(*)] (Person))";
+		assertEquals(expected, new ReusableQueryParser(catalogue).parse("SELECT COUNT(*) FROM Person").toString());
+		assertEquals(expected, TestCatalogues.parseLines(catalogue, "SELECT COUNT(*)", "FROM Person").toString());
+	}
+
+	// An aggregate that is ordered by but not selected is computed by the Aggregate, and dropped by the Project
+	public static void testOrderByAggregateThatIsNotSelected() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		String expected = "PROJECT [dept] (TOPK [2] [COUNT(*) DESC] (AGGREGATE [dept] [COUNT(*)] (Project)))";
+		assertEquals(expected, new ReusableQueryParser(catalogue)
+				.parse("SELECT dept FROM Project GROUP BY dept ORDER BY COUNT(*) DESC LIMIT 2").toString());
+		assertEquals(expected, TestCatalogues.parseLines(catalogue,
+				"SELECT dept", "FROM Project", "GROUP BY dept", "ORDER BY COUNT(*) DESC LIMIT 2").toString());
+
+		expected = "PROJECT [dept] (TOPK [ALL] [COUNT(*)] (AGGREGATE [dept] [COUNT(*)] (Project)))";
+		assertEquals(expected, new ReusableQueryParser(catalogue)
+				.parse("SELECT * FROM Project GROUP BY dept ORDER BY COUNT(*)").toString());
+		assertEquals(expected, TestCatalogues.parseLines(catalogue,
+				"SELECT *", "FROM Project", "GROUP BY dept", "ORDER BY COUNT(*)").toString());
+	}
+
+	public static void testOrderByAggregateIsRejectedWithoutGrouping() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		assertThrows(DatabaseException.class,
+				() -> new ReusableQueryParser(catalogue).parse("SELECT projname FROM Project ORDER BY COUNT(*)"));
+		assertThrows(DatabaseException.class,
+				() -> TestCatalogues.parseLines(catalogue, "SELECT projname", "FROM Project", "ORDER BY COUNT(*)"));
+	}
+
+	public static void testOrderByAttributeThatIsNotGroupedIsRejected() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		assertThrows(DatabaseException.class, () -> new ReusableQueryParser(catalogue)
+				.parse("SELECT dept FROM Project GROUP BY dept ORDER BY projname"));
+		assertThrows(DatabaseException.class, () -> TestCatalogues.parseLines(catalogue,
+				"SELECT dept", "FROM Project", "GROUP BY dept", "ORDER BY projname"));
+	}
+
+	public static void testSelfJoinNeedsAliasesAndQualifiedAttributes() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		assertThrows(DatabaseException.class,
+				() -> new ReusableQueryParser(catalogue).parse("SELECT * FROM Person, Person"));
+		assertThrows(DatabaseException.class,
+				() -> new ReusableQueryParser(catalogue).parse("SELECT * FROM Person a, Person a"));
+		assertThrows(DatabaseException.class, () -> new ReusableQueryParser(catalogue)
+				.parse("SELECT persname FROM Person a, Person b WHERE a.persid=b.age"));
+		assertThrows(DatabaseException.class, () -> TestCatalogues.parseLines(catalogue,
+				"SELECT persname", "FROM Person a, Person b", "WHERE a.persid=b.age"));
+		assertEquals("PROJECT [b.persname] (SELECT [a.persid=b.age] ((Person a) TIMES (Person b)))",
+				new ReusableQueryParser(catalogue)
+						.parse("SELECT b.persname FROM Person a, Person b WHERE a.persid=b.age").toString());
+	}
+
+	public static void testClausesMustComeInOrderAndOnce() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		String[][] queries = {
+			{"SELECT *", "FROM Person", "LIMIT 5", "WHERE age=\"3\""},
+			{"SELECT *", "FROM Person", "WHERE age=\"3\"", "WHERE persname=\"Smith\""},
+			{"SELECT age", "FROM Person", "ORDER BY age", "GROUP BY age"},
+			{"SELECT *", "FROM Person", "LIMIT 5", "LIMIT 6"},
+			{"SELECT *", "FROM Person", "ORDER BY age", "ORDER BY persname"},
+			{"SELECT age", "FROM Person", "GROUP BY age", "WHERE age=\"3\""}
+		};
+		for (String[] lines : queries) {
+			assertThrows(DatabaseException.class,
+					() -> new ReusableQueryParser(catalogue).parse(String.join(" ", lines)));
+			assertThrows(DatabaseException.class, () -> TestCatalogues.parseLines(catalogue, lines));
+		}
+		assertThrows(DatabaseException.class,
+				() -> new ReusableQueryParser(catalogue).parse("SELECT * FROM Person LIMIT 5 LIMIT 6"));
+		assertThrows(DatabaseException.class, () -> new ReusableQueryParser(catalogue)
+				.parse("SELECT * FROM Person ORDER BY age LIMIT 5 ORDER BY age"));
+	}
+
+	// Both parsers read the same format, and build the same canonical plans
+	public static void testParsersBuildTheSamePlans() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		List<String[]> queries = new ArrayList<String[]>();
+		for (int i = 1; i <= 5; i++) {
+			queries.add(Files.readAllLines(new File("data/q" + i + ".txt").toPath(), StandardCharsets.UTF_8)
+					.toArray(new String[0]));
+		}
+		queries.add(new String[] {"SELECT p.projname, d.deptname", "FROM Project p, Department AS d",
+				"WHERE p.dept=d.deptid, d.deptname IN (\"Sales\",\"HR\") OR d.manager=\"3\""});
+		queries.add(new String[] {"SELECT dept, COUNT(*), MAX(projname)", "FROM Project", "WHERE dept=\"3\"",
+				"GROUP BY dept", "ORDER BY COUNT(*) DESC, dept", "LIMIT 3"});
+		queries.add(new String[] {"SELECT *", "FROM Person a, Person b", "WHERE a.persid=b.age",
+				"ORDER BY a.age LIMIT 10"});
+		queries.add(new String[] {"SELECT *", "FROM Project", "GROUP BY dept", "ORDER BY AVG(projid)"});
+
+		ReusableQueryParser parser = new ReusableQueryParser(catalogue);
+		Estimator estimator = new Estimator(catalogue);
+		for (String[] lines : queries) {
+			Operator expected = TestCatalogues.parseLines(catalogue, lines);
+			Operator plan = parser.parse(String.join("\n", lines));
+			assertEquals(expected.toString(), plan.toString());
+			expected.accept(estimator);
+			plan.accept(estimator);
+			assertEquals(expected.getOutput().render(), plan.getOutput().render());
+		}
+	}
+}
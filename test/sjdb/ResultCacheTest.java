@@ -0,0 +1,73 @@
+package sjdb;
+
+import static sjdb.Assert.*;
+
+/**
+ * Tests of ResultCache.
+ */
+public class ResultCacheTest {
+
+	public static void testEqualPlanFindsTheResult() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		ResultCache<String> cache = new ResultCache<String>(10);
+		cache.put(TestCatalogues.plan(catalogue, "SELECT * FROM Person WHERE age=\"30\""), "thirty", 1);
+		assertEquals("thirty", cache.get(TestCatalogues.plan(catalogue, "SELECT * FROM Person WHERE age=\"30\"")));
+		assertEquals(null, cache.get(TestCatalogues.plan(catalogue, "SELECT * FROM Person WHERE age=\"31\"")));
+		assertEquals(null, cache.get(TestCatalogues.plan(catalogue, "SELECT * FROM Person p WHERE p.age=\"30\"")));
+	}
+
+	public static void testLeastRecentlyUsedResultIsEvicted() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		Operator person = TestCatalogues.plan(catalogue, "SELECT * FROM Person");
+		Operator project = TestCatalogues.plan(catalogue, "SELECT * FROM Project");
+		Operator department = TestCatalogues.plan(catalogue, "SELECT * FROM Department");
+		ResultCache<String> cache = new ResultCache<String>(10);
+		cache.put(person, "person", 4);
+		cache.put(project, "project", 4);
+		cache.get(person);
+		cache.put(department, "department", 4);
+		assertEquals("person", cache.get(person));
+		assertEquals(null, cache.get(project));
+		assertEquals("department", cache.get(department));
+		assertEquals(8L, cache.getSize());
+	}
+
+	public static void testResultLargerThanTheCacheIsNotCached() throws Exception {
+		Operator plan = TestCatalogues.plan(TestCatalogues.data(), "SELECT * FROM Person");
+		ResultCache<String> cache = new ResultCache<String>(10);
+		cache.put(plan, "small", 2);
+		cache.put(plan, "large", 11);
+		assertEquals(null, cache.get(plan));
+		assertEquals(0L, cache.getSize());
+	}
+
+	public static void testInvalidateDropsTheResultsReadingTheRelation() throws Exception {
+		Catalogue catalogue = TestCatalogues.data();
+		Operator join = TestCatalogues.optimise(catalogue,
+				"SELECT persname, deptname FROM Department, Person WHERE manager=persid, deptname=\"X\"");
+		Operator aliased = TestCatalogues.plan(catalogue, "SELECT * FROM Person p WHERE p.age=\"30\"");
+		Operator project = TestCatalogues.plan(catalogue, "SELECT * FROM Project");
+		ResultCache<String> cache = new ResultCache<String>(10);
+		cache.put(join, "join", 1);
+		cache.put(aliased, "aliased", 1);
+		cache.put(project, "project", 1);
+		cache.invalidate(catalogue.getRelation("Person"));
+		assertEquals(null, cache.get(join));
+		assertEquals(null, cache.get(aliased));
+		assertEquals("project", cache.get(project));
+		assertEquals(1L, cache.getSize());
+	}
+
+	public static void testRepeatedQueryIsExplainedOnce() throws Exception {
+		ReusableQueryParser parser = new ReusableQueryParser(TestCatalogues.data());
+		ResultCache<SJDB.Explanation> results = new ResultCache<SJDB.Explanation>(SJDB.RESULT_CACHE_CAPACITY);
+		SJDB.Explanation first = SJDB.explain(parser, "SELECT * FROM Person WHERE age=\"30\"", results);
+		assertTrue("cached", SJDB.explain(parser, "SELECT * FROM Person WHERE age = \"30\";", results) == first);
+		assertEquals((long) first.text.length(), results.getSize());
+
+		SJDB.Explanation error = SJDB.explain(parser, "SELECT * FROM Nope", results);
+		assertEquals(null, error.plan);
+		assertTrue(error.text, error.text.startsWith("ERROR "));
+		assertEquals((long) first.text.length(), results.getSize());
+	}
+}
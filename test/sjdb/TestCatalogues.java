@@ -0,0 +1,107 @@
+package sjdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class builds the catalogues and plans used by the tests.
+ */
+public class TestCatalogues {
+	/**
+	 * The catalogue of the example queries
+	 */
+	public static final String DATA = "data/cat.txt";
+
+	/**
+	 * Read the catalogue of the example queries
+	 * @return Catalogue
+	 */
+	public static Catalogue data() throws Exception {
+		return read(DATA);
+	}
+
+	/**
+	 * Read a text catalogue file
+	 * @param filename
+	 * @return Catalogue
+	 */
+	public static Catalogue read(String filename) throws Exception {
+		Catalogue catalogue = new Catalogue();
+		new CatalogueParser(filename, catalogue).parseStrictly();
+		return catalogue;
+	}
+
+	/**
+	 * Build a catalogue from the catalogue of the example queries and
+	 * further lines, such as views
+	 * @param lines
+	 * @return Catalogue
+	 */
+	public static Catalogue dataWith(String... lines) throws Exception {
+		List<String> data = new ArrayList<String>(Files.readAllLines(new File(DATA).toPath(), StandardCharsets.UTF_8));
+		data.addAll(Arrays.asList(lines));
+		return parse(data.toArray(new String[data.size()]));
+	}
+
+	/**
+	 * Build a catalogue from the lines of a text catalogue
+	 * @param lines
+	 * @return Catalogue
+	 */
+	public static Catalogue parse(String... lines) throws Exception {
+		return read(write(lines).getPath());
+	}
+
+	/**
+	 * Write the lines of a text catalogue to a temporary file, which is
+	 * deleted when the tests finish
+	 * @param lines
+	 * @return File
+	 */
+	public static File write(String... lines) throws IOException {
+		File file = File.createTempFile("sjdb", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+		return file;
+	}
+
+	/**
+	 * Parse a query and estimate its canonical plan
+	 * @param catalogue
+	 * @param query
+	 * @return Canonical plan
+	 */
+	public static Operator plan(Catalogue catalogue, String query) throws DatabaseException {
+		Operator plan = new ReusableQueryParser(catalogue).parse(query);
+		plan.accept(new Estimator(catalogue));
+		return plan;
+	}
+
+	/**
+	 * Parse, optimise and estimate a query
+	 * @param catalogue
+	 * @param query
+	 * @return Optimised plan
+	 */
+	public static Operator optimise(Catalogue catalogue, String query) throws DatabaseException {
+		Operator plan = new Optimiser(catalogue).optimise(plan(catalogue, query));
+		plan.accept(new Estimator(catalogue));
+		return plan;
+	}
+
+	/**
+	 * Parse a query with QueryParser, which reads each clause from its own line
+	 * @param catalogue
+	 * @param lines Lines of the query
+	 * @return Canonical plan
+	 */
+	public static Operator parseLines(Catalogue catalogue, String... lines) throws Exception {
+		return new QueryParser(catalogue, new StringReader(String.join("\n", lines))).parse();
+	}
+}